@@ -1,302 +1,567 @@
 package inet.data;
 
-public class Parameters {	
+// Calibration of a model. Immutable: built once per IUModel (see Builder), from the defaults below, a properties file
+// and/or overrides, then handed to its firms, s.t. models with different calibrations can run side by side in one JVM.
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+public final class Parameters {	
 	
 	// Initial parametrization
-	private static double a0; // initial productivity of the two sectors
-	private static double w0; // initial wage
-	private static double nw10; // net wealth of k-firms at t = 0
-	private static double nw20; // net wealth of c-firms at t = 0
-	private static double k0; // initial stock of capital of c-firms
-	private static double ls; // labour supply = number of households = number of consumer
+	private final double a0; // initial productivity of the two sectors
+	private final double w0; // initial wage
+	private final double nw10; // net wealth of k-firms at t = 0
+	private final double nw20; // net wealth of c-firms at t = 0
+	private final double k0; // initial stock of capital of c-firms
+	private final double ls; // labour supply = number of households = number of consumer
 	
 	// K-FIRMS
-	private static double mu1; // fixed mark-up, price equation
-	private static double nu; // fraction of past sales invested in R&D
-	private static double xi; // share of innovation in R&D expenditure
-	private static double zeta1; // parameter in Bernouilli distribution parameter for innovation
-	private static double zeta2; // parameter in Bernouilli distribution parameter for imitation
-	private static double gamma; // new clients per period as a share of current clients 
+	private final double mu1; // fixed mark-up, price equation
+	private final double nu; // fraction of past sales invested in R&D
+	private final double xi; // share of innovation in R&D expenditure
+	private final double zeta1; // parameter in Bernouilli distribution parameter for innovation
+	private final double zeta2; // parameter in Bernouilli distribution parameter for imitation
+	private final double gamma; // new clients per period as a share of current clients 
 	
 	// parameters for the distribution
-	private static double alpha1; // alpha parameter in Beta distribution for innovation 
-	private static double beta1; // beta parameter in Beta distribution for innovation 
-	private static double x1lower; // lower support of Beta distribution for innovation 
-	private static double x1upper; // upper support of Beta distribution for innovation 
+	private final double alpha1; // alpha parameter in Beta distribution for innovation 
+	private final double beta1; // beta parameter in Beta distribution for innovation 
+	private final double x1lower; // lower support of Beta distribution for innovation 
+	private final double x1upper; // upper support of Beta distribution for innovation 
 	
-	private static double alpha2; // alpha parameter in Beta distribution for innovation of new entrants
-	private static double beta2; // alpha parameter in Beta distribution for innovation of new entrants
+	private final double alpha2; // alpha parameter in Beta distribution for innovation of new entrants
+	private final double beta2; // alpha parameter in Beta distribution for innovation of new entrants
 	
 	// C-FIRMS
-	private static int dimK;// not specified in the model; represent the max number of machine a firm has 
-	private static double maxKGrowth; // ''in any give period firm capital growth rates cannot exceed a fixed maximum threshold''
+	private final int dimK;// not specified in the model; represent the max number of machine a firm has 
+	private final double maxKGrowth; // ''in any give period firm capital growth rates cannot exceed a fixed maximum threshold''
+	private final double c0; // unit cost of production of the c-firms
+	private final double machinePrice; // price of a machine (dimK units of investment)
 	
-	private static double iota; // desired level of inventories as a share of expected demand 
-	private static double cud; // desired level of capacity utilization 
-	private static double chi; // parameter in firms' market share equation 
+	private final double iota; // desired level of inventories as a share of expected demand 
+	private final double cud; // desired level of capacity utilization 
+	private final double chi; // parameter in firms' market share equation 
 
-	private static double eta; // maximal age of machines after which they have to be replaced 
-	private static double b; // payback parameter 
+	private final double eta; // maximal age of machines after which they have to be replaced 
+	private final double b; // payback parameter 
 
-	private static double v; // parameter in market shares dynamic equation 
+	private final double v; // parameter in market shares dynamic equation 
 	
-	private static double omega1; // price relative importance in competitiveness equation
-	private static double omega2; // unfilled demand relative importance in competitiveness equation 
+	private final double omega1; // price relative importance in competitiveness equation
+	private final double omega2; // unfilled demand relative importance in competitiveness equation 
 	
-	private static double phi1; // lower support Uniform distribution, new entrants capital
-	private static double phi2; // upper support Uniform distribution, new entrants capital
-	private static double phi3; /* lower support Uniform distribution, new entrants liquid assets
+	private final double phi1; // lower support Uniform distribution, new entrants capital
+	private final double phi2; // upper support Uniform distribution, new entrants capital
+	private final double phi3; /* lower support Uniform distribution, new entrants liquid assets
 	both for C-firms and K-firms */
-	private static double phi4; /* upper support Uniform distribution, new entrants liquid assets
+	private final double phi4; /* upper support Uniform distribution, new entrants liquid assets
 	both for C-firms and K-firms */
 	
-	private static double repaymentShare; // fraction of the debt they repay in each period
+	private final double repaymentShare; // fraction of the debt they repay in each period
 
 	// BANKING
-	private static double lambda; // loan-to-value ratio 
-	private static double psiD; // markdown on deposit rate 
-	private static double psiL; // markup on interest rate 
+	private final double lambda; // loan-to-value ratio 
+	private final double psiD; // markdown on deposit rate 
+	private final double psiL; // markup on interest rate 
 	
-	private static double cbMd; // mark down on bank's deposit at the CB
+	private final double cbMd; // mark down on bank's deposit at the CB
 	
 	// WAGE DYNAMICS
-	private static double psi1; // labour productivity parameter
-	private static double psi2; // inflation/cpi parameter 
-	private static double psi3; // unemployment parameter 
+	private final double psi1; // labour productivity parameter
+	private final double psi2; // inflation/cpi parameter 
+	private final double psi3; // unemployment parameter 
 	
 	// OTHER PARAMETERS
-	private static double speedConv; // determine the precision of the optimal solution 
+	private final double speedConv; // determine the precision of the optimal solution
+	private final double r; // int. rate on the debt 
+
+	// derived, used in the payment condition of the c-firms
+	private final double sPlusR; // repaymentShare + r: share of the debt (and of the loan) paid back, with interest, in the period 
+	private final double oneMinusSMinusR; // 1 - repaymentShare - r: share of the loan lDebt left once its own repayment is paid 
+	private final double tolerance; // 10^-speedConv: precision of the roots found by the AdjustmentSolver Bracketed
+
+	private Parameters(Builder builder) {
+		a0 = builder.a0;
+		w0 = builder.w0;
+		nw10 = builder.nw10;
+		nw20 = builder.nw20;
+		k0 = builder.k0;
+		ls = builder.ls;
+		mu1 = builder.mu1;
+		nu = builder.nu;
+		xi = builder.xi;
+		zeta1 = builder.zeta1;
+		zeta2 = builder.zeta2;
+		gamma = builder.gamma;
+		alpha1 = builder.alpha1;
+		beta1 = builder.beta1;
+		x1lower = builder.x1lower;
+		x1upper = builder.x1upper;
+		alpha2 = builder.alpha2;
+		beta2 = builder.beta2;
+		dimK = builder.dimK;
+		maxKGrowth = builder.maxKGrowth;
+		c0 = builder.c0;
+		machinePrice = builder.machinePrice;
+		iota = builder.iota;
+		cud = builder.cud;
+		chi = builder.chi;
+		eta = builder.eta;
+		b = builder.b;
+		v = builder.v;
+		omega1 = builder.omega1;
+		omega2 = builder.omega2;
+		phi1 = builder.phi1;
+		phi2 = builder.phi2;
+		phi3 = builder.phi3;
+		phi4 = builder.phi4;
+		repaymentShare = builder.repaymentShare;
+		lambda = builder.lambda;
+		psiD = builder.psiD;
+		psiL = builder.psiL;
+		cbMd = builder.cbMd;
+		psi1 = builder.psi1;
+		psi2 = builder.psi2;
+		psi3 = builder.psi3;
+		speedConv = builder.speedConv;
+		r = builder.r;
+
+		sPlusR = repaymentShare + r;
+		oneMinusSMinusR = 1 - repaymentShare - r;
+		tolerance = Math.pow(10, -speedConv);
+	}
+
+	// calibration by default
+	public static Parameters calibration() {
+		return builder().build();
+	}
+
+	// the parameters by name, those of the Builder (not the derived ones), e.g. to compare two calibrations
+	public Map<String, Double> values() {
+		Map<String, Double> values = new TreeMap<String, Double>();
+		try {
+			for (Field parameter : Builder.class.getDeclaredFields()) {
+				if (Modifier.isStatic(parameter.getModifiers()))
+					continue;
+				Field field = Parameters.class.getDeclaredField(parameter.getName());
+				if (field.getType() == int.class)
+					values.put(field.getName(), (double) field.getInt(this));
+				else if (field.getType() == double.class)
+					values.put(field.getName(), field.getDouble(this));
+			}
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		return values;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	// ---------------------------------------------------------------------
+	// Builder
+	// ---------------------------------------------------------------------
+
+	public static final class Builder {
+
+		private double a0;
+		private double w0;
+		private double nw10;
+		private double nw20;
+		private double k0;
+		private double ls;
+		private double mu1;
+		private double nu;
+		private double xi;
+		private double zeta1;
+		private double zeta2;
+		private double gamma;
+		private double alpha1;
+		private double beta1;
+		private double x1lower;
+		private double x1upper;
+		private double alpha2;
+		private double beta2;
+		private int dimK;
+		private double maxKGrowth;
+		private double c0;
+		private double machinePrice;
+		private double iota;
+		private double cud;
+		private double chi;
+		private double eta;
+		private double b;
+		private double v;
+		private double omega1;
+		private double omega2;
+		private double phi1;
+		private double phi2;
+		private double phi3;
+		private double phi4;
+		private double repaymentShare;
+		private double lambda;
+		private double psiD;
+		private double psiL;
+		private double cbMd;
+		private double psi1;
+		private double psi2;
+		private double psi3;
+		private double speedConv;
+		private double r;
+
+		private Builder() {
+			calibration();
+		}
+
+		private void calibration(){
+			// initial value from their code
+				a0 = 1;
+				w0 = 1;
+				k0 = 800;
+				nw20 = nw10 =  1000;
+				ls = 250000;
+	
 	
-	public static void calibration(){
-		// initial value from their code
-			a0 = 1;
-			w0 = 1;
-			k0 = 800;
-			nw20 = nw10 =  1000;
-			ls = 250000;
+			// mostly from Dosi et al. (2013), appendix
+				// k-firms
+				mu1 = 0.04;
+				nu = 0.04;
+				xi = 0.50;
+				zeta1 = zeta2 = 0.30;
+				gamma = 0.50;
+				
+				alpha1 = 3.;
+				beta1 = 3.;
+				x1lower = -0.15;
+				x1upper = 0.15;
+				
+				// Dosi et al. (2010)
+				alpha2 = 2.;
+				beta2 = 4.;
+				
+				// c-firms
+				dimK = 40;
+				maxKGrowth = 0.50; // think so...
+				c0 = 1.; // stationary, as in resource_allocation.pdf
+				machinePrice = 1.;
 		
+				iota = 0.10;
+				cud = 0.75; // not in any papers, obtained from their code
+				chi = 1.;
+				
+				eta = 19.;
+				b = 3.;
+				
+				v = 0.01;
+				omega1 = omega2 = 1.;
+				
+				// obtained in the calibration table, Dosi et al. (2010)
+				phi1 = 0.1;
+				phi2 = 0.9;
+				
+				phi3 = 0.1;
+				phi4 = 0.9;
 		
-		// mostly from Dosi et al. (2013), appendix
-			// k-firms
-			mu1 = 0.04;
-			nu = 0.04;
-			xi = 0.50;
-			zeta1 = zeta2 = 0.30;
-			gamma = 0.50;
-					
-			alpha1 = 3.;
-			beta1 = 3.;
-			x1lower = -0.15;
-			x1upper = 0.15;
-					
-			// Dosi et al. (2010)
-			alpha2 = 2.;
-			beta2 = 4.;
-					
-			// c-firms
-			dimK = 40;
-			maxKGrowth = 0.50; // think so...
-			
-			iota = 0.10;
-			cud = 0.75; // not in any papers, obtained from their code
-			chi = 1.;
-					
-			eta = 19.;
-			b = 3.;
-					
-			v = 0.01;
-			omega1 = omega2 = 1.;
-					
-			// obtained in the calibration table, Dosi et al. (2010)
-			phi1 = 0.1;
-			phi2 = 0.9;
-					
-			phi3 = 0.1;
-			phi4 = 0.9;
-			
-			repaymentShare = 0.333333;
-
-			// bank
-			lambda = 2.;
-			psiD = 1.;
-			psiL = 0.50;
-			
-			cbMd = 0.9; //(from their code) 
-					
-			
-			psi1 = 1.;
-			psi2 = 0.;
-			psi3 = 0.; 
-			
-			speedConv = 10;
+				repaymentShare = 0.333333;
+
+				// bank
+				lambda = 2.;
+				psiD = 1.;
+				psiL = 0.50;
+		
+				cbMd = 0.9; //(from their code) 
+				
+		
+				psi1 = 1.;
+				psi2 = 0.;
+				psi3 = 0.; 
+		
+				speedConv = 10;
+
+			// int. rate on the debt
+			r = 0.02;
+	}
+
+		// sets the parameter name, e.g. set("dimK", 10)
+		public Builder set(String name, double value) {
+			Field field = parameter(name);
+			try {
+				if (field.getType() == int.class)
+					field.setInt(this, (int) Math.round(value));
+				else
+					field.setDouble(this, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+			return this;
+		}
+
+		public Builder set(Map<String, Double> values) {
+			for (Map.Entry<String, Double> value : values.entrySet())
+				set(value.getKey(), value.getValue());
+			return this;
+		}
+
+		// sets the parameters of a properties file, one name = value per line
+		public Builder load(File file) throws IOException {
+			Properties properties = new Properties();
+			InputStream in = new FileInputStream(file);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+			for (String name : properties.stringPropertyNames()) {
+				try {
+					set(name, Double.parseDouble(properties.getProperty(name).trim()));
+				} catch (RuntimeException e) {
+					throw new IOException(file + ": invalid parameter " + name + " = " + properties.getProperty(name), e);
+				}
+			}
+			return this;
+		}
+
+		public Builder setDimK(int dimK) {
+			this.dimK = dimK;
+			return this;
+		}
+
+		public Builder setRepaymentShare(double repaymentShare) {
+			this.repaymentShare = repaymentShare;
+			return this;
+		}
+
+		public Builder setR(double r) {
+			this.r = r;
+			return this;
+		}
+
+		public Parameters build() {
+			return new Parameters(this);
+		}
+
+		// whether the parameter name only takes integers (set() rounds its value); false for an unknown name
+		public static boolean isInteger(String name) {
+			try {
+				return parameter(name).getType() == int.class;
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+		}
+
+		private static Field parameter(String name) {
+			try {
+				Field field = Builder.class.getDeclaredField(name);
+				if (Modifier.isStatic(field.getModifiers()) || (field.getType() != double.class && field.getType() != int.class))
+					throw new IllegalArgumentException(name + " is not a parameter");
+				return field;
+			} catch (NoSuchFieldException e) {
+				throw new IllegalArgumentException("Unknown parameter " + name);
+			}
+		}
 	}
 	
 	// ---------------------------------------------------------------------
 	// Access methods
 	// ---------------------------------------------------------------------
 
-	public static double getMu1() {
+	public double getMu1() {
 		return mu1;
 	}
 
-	public static double getNu() {
+	public double getNu() {
 		return nu;
 	}
 
-	public static double getXi() {
+	public double getXi() {
 		return xi;
 	}
 
-	public static double getZeta1() {
+	public double getZeta1() {
 		return zeta1;
 	}
 
-	public static double getZeta2() {
+	public double getZeta2() {
 		return zeta2;
 	}
 
-	public static double getGamma() {
+	public double getGamma() {
 		return gamma;
 	}
 
-	public static double getAlpha1() {
+	public double getAlpha1() {
 		return alpha1;
 	}
 
-	public static double getBeta1() {
+	public double getBeta1() {
 		return beta1;
 	}
 
-	public static double getX1lower() {
+	public double getX1lower() {
 		return x1lower;
 	}
 
-	public static double getX1upper() {
+	public double getX1upper() {
 		return x1upper;
 	}
 
-	public static double getAlpha2() {
+	public double getAlpha2() {
 		return alpha2;
 	}
 
-	public static double getBeta2() {
+	public double getBeta2() {
 		return beta2;
 	}
 
-	public static double getIota() {
+	public double getIota() {
 		return iota;
 	}
 
-	public static double getCud() {
+	public double getCud() {
 		return cud;
 	}
 
-	public static double getChi() {
+	public double getChi() {
 		return chi;
 	}
 
-	public static double getEta() {
+	public double getEta() {
 		return eta;
 	}
 
-	public static double getB() {
+	public double getB() {
 		return b;
 	}
 
-	public static double getV() {
+	public double getV() {
 		return v;
 	}
 
-	public static double getOmega1() {
+	public double getOmega1() {
 		return omega1;
 	}
 
-	public static double getOmega2() {
+	public double getOmega2() {
 		return omega2;
 	}
 
-	public static double getPhi1() {
+	public double getPhi1() {
 		return phi1;
 	}
 
-	public static double getPhi2() {
+	public double getPhi2() {
 		return phi2;
 	}
 
-	public static double getPhi3() {
+	public double getPhi3() {
 		return phi3;
 	}
 
-	public static double getPhi4() {
+	public double getPhi4() {
 		return phi4;
 	}
 
-	public static double getLambda() {
+	public double getLambda() {
 		return lambda;
 	}
 
-	public static double getPsiD() {
+	public double getPsiD() {
 		return psiD;
 	}
 
-	public static double getPsiL() {
+	public double getPsiL() {
 		return psiL;
 	}
 
-	public static double getPsi1() {
+	public double getPsi1() {
 		return psi1;
 	}
 
-	public static double getPsi2() {
+	public double getPsi2() {
 		return psi2;
 	}
 
-	public static double getPsi3() {
+	public double getPsi3() {
 		return psi3;
 	}
 
-	public static double getA0() {
+	public double getA0() {
 		return a0;
 	}
 
-	public static double getW0() {
+	public double getW0() {
 		return w0;
 	}
 
-	public static double getNw10() {
+	public double getNw10() {
 		return nw10;
 	}
 
-	public static double getNw20() {
+	public double getNw20() {
 		return nw20;
 	}
 
-	public static double getK0() {
+	public double getK0() {
 		return k0;
 	}
 
-	public static double getLs() {
+	public double getLs() {
 		return ls;
 	}
 
-	public static int getDimK() {
+	public int getDimK() {
 		return dimK;
 	}
 
-	public static double getCbMd() {
+	public double getCbMd() {
 		return cbMd;
 	}
 
-	public static double getMaxKGrowth() {
+	public double getMaxKGrowth() {
 		return maxKGrowth;
 	}
 
-	public static double getRepaymentShare() {
+	public double getC0() {
+		return c0;
+	}
+
+	public double getMachinePrice() {
+		return machinePrice;
+	}
+
+	public double getRepaymentShare() {
 		return repaymentShare;
 	}
 
-	public static double getSpeedConv() {
+	public double getSpeedConv() {
 		return speedConv;
 	}
 
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public double getR() {
+		return r;
+	}
+
+	public double getSPlusR() {
+		return sPlusR;
+	}
+
+	public double getOneMinusSMinusR() {
+		return oneMinusSMinusR;
+	}
+
 }
@@ -0,0 +1,72 @@
+package inet.experiment;
+
+import inet.model.Branch;
+import inet.model.FirmAggregates;
+import inet.model.QuantileSketch;
+import inet.model.RunningStats;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+public class AggregatesCsvWriter implements Closeable {
+
+	// Writes FirmAggregates to a .csv file, one row per tick: the number of firms, then for each variable its mean,
+	// standard deviation, min, max and QUANTILES (from the sketch), then the share of the firms in each regime
+
+	public static final double[] QUANTILES = {0.01, 0.1, 0.5, 0.9, 0.99};
+
+	private final BufferedWriter out;
+
+	public AggregatesCsvWriter(File file) throws IOException {
+		out = new BufferedWriter(new FileWriter(file));
+		StringBuilder header = new StringBuilder("time,");
+		appendHeader(header);
+		out.write(header.toString());
+		out.newLine();
+	}
+
+	public void write(FirmAggregates aggregates) throws IOException {
+		StringBuilder row = new StringBuilder();
+		row.append(aggregates.getTime()).append(',');
+		appendRow(row, aggregates);
+		out.write(row.toString());
+		out.newLine();
+	}
+
+	// columns of the aggregates of one tick, time excluded
+	static void appendHeader(StringBuilder header) {
+		header.append("firms");
+		for (String variable : FirmAggregates.VARIABLES) {
+			header.append(',').append(variable).append("_mean,").append(variable).append("_sd,").append(variable)
+					.append("_min,").append(variable).append("_max");
+			for (double q : QUANTILES)
+				header.append(',').append(variable).append("_p").append(Math.round(q * 100));
+		}
+		for (Branch regime : Branch.values())
+			if (regime.isRegime())
+				header.append(",share_").append(regime);
+	}
+
+	static void appendRow(StringBuilder row, FirmAggregates aggregates) {
+		row.append(aggregates.getCount());
+		for (int k = 0; k < FirmAggregates.VARIABLES.length; k++) {
+			RunningStats stats = aggregates.getStats(k);
+			QuantileSketch sketch = aggregates.getSketch(k);
+			row.append(',').append(stats.getMean()).append(',').append(Math.sqrt(stats.getVariance()))
+					.append(',').append(stats.getMin()).append(',').append(stats.getMax());
+			for (double q : QUANTILES)
+				row.append(',').append(sketch.quantile(q));
+		}
+		for (Branch regime : Branch.values())
+			if (regime.isRegime())
+				row.append(',').append(aggregates.getRegimeShare(regime));
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+}
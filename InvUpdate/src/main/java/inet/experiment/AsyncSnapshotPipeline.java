@@ -0,0 +1,136 @@
+package inet.experiment;
+
+// Writes FirmSnapshots to sinks on a background thread, s.t. the simulation goes on with tick t+1 while tick t is
+// written. Two snapshots are allocated once and go round between the simulation and the writer: submit() copies the
+// state of the firms into a free one and queues it; the writer writes it to every sink and frees it. If the writer
+// falls behind, submit() waits for a free snapshot (backpressure: at most one snapshot queued on top of the one being
+// written). A snapshot of more than part firms is copied and queued in parts of at most part firms, going round the
+// same way: the copies stay bounded by two parts whatever the population, the simulation then only overlapping with
+// the writing of the last parts. The snapshots are written in the order of submission, s.t. the outputs are the same
+// as when writing synchronously. Any failure of the writer (exception or error) is recorded, and rethrown by the next submit() and by
+// close(); the writer then only recycles the snapshots, s.t. the simulation never waits for a dead writer.
+
+import inet.model.FirmSnapshot;
+import inet.model.IUModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncSnapshotPipeline {
+
+	private static final FirmSnapshot END = new FirmSnapshot(0); // poison pill, stops the writer
+
+	private final List<SnapshotSink> sinks;
+	private final int[] rows; // rows of the firms to copy, all if null
+	private final int part; // firms per part of a snapshot, at most
+	private final BlockingQueue<FirmSnapshot> free = new ArrayBlockingQueue<FirmSnapshot>(2);
+	private final BlockingQueue<FirmSnapshot> full = new ArrayBlockingQueue<FirmSnapshot>(3);
+	private final Thread writer;
+
+	private volatile Throwable failure; // first failure of the writer, rethrown to the simulation
+
+	public AsyncSnapshotPipeline(List<SnapshotSink> sinks, int firms, int part, int[] rows) {
+		this.sinks = new ArrayList<SnapshotSink>(sinks);
+		this.rows = rows;
+		this.part = part;
+		free.add(new FirmSnapshot(Math.min(firms, part)));
+		free.add(new FirmSnapshot(Math.min(firms, part)));
+
+		writer = new Thread("snapshot-writer") {
+			public void run() {
+				write();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// copies the state of the firms at the given time and queues it for writing, part by part; waits if both snapshots
+	// are taken
+	public void submit(IUModel model, double time) throws IOException {
+		checkFailure();
+		int firms = FirmSnapshot.firms(model, rows);
+		int from = 0;
+		try {
+			do {
+				FirmSnapshot snapshot;
+				while ((snapshot = free.poll(100, TimeUnit.MILLISECONDS)) == null) {
+					checkFailure();
+					if (!writer.isAlive())
+						throw new IOException("The snapshot writer has stopped");
+				}
+				int to = Math.min(firms, from + part);
+				snapshot.capture(model, time, rows, from, to);
+				full.put(snapshot);
+				from = to;
+			} while (from < firms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the snapshot writer", e);
+		}
+	}
+
+	// writes the queued snapshots, stops the writer and closes the sinks
+	public void close() throws IOException {
+		try {
+			full.put(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing the snapshot writer", e);
+		}
+		IOException closing = null; // every sink is closed, whatever fails
+		for (SnapshotSink sink : sinks) {
+			try {
+				sink.close();
+			} catch (IOException e) {
+				if (closing == null)
+					closing = e;
+				else
+					closing.addSuppressed(e);
+			}
+		}
+		if (failure != null) {
+			IOException e = new IOException("The snapshot writer failed", failure);
+			if (closing != null)
+				e.addSuppressed(closing);
+			throw e;
+		}
+		if (closing != null)
+			throw closing;
+	}
+
+	private void write() {
+		try {
+			FirmSnapshot snapshot;
+			while ((snapshot = full.take()) != END) {
+				try {
+					if (failure == null) // after a failure, the snapshots are only recycled
+						for (SnapshotSink sink : sinks)
+							sink.write(snapshot);
+				} catch (Throwable e) {
+					failure = e;
+				}
+				free.add(snapshot);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			failure = e;
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null)
+			throw new IOException("The snapshot writer failed", failure);
+	}
+
+}
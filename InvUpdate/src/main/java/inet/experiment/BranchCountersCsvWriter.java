@@ -0,0 +1,48 @@
+package inet.experiment;
+
+import inet.model.Branch;
+import inet.model.BranchCounters;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+public class BranchCountersCsvWriter implements Closeable {
+
+	// Writes BranchCounters to a .csv file, one row per tick: the number of firms, the number of firms through each
+	// branch of the decision, then the total and mean number of steps of the investment cut-back, and their histogram
+
+	private final BufferedWriter out;
+
+	public BranchCountersCsvWriter(File file) throws IOException {
+		out = new BufferedWriter(new FileWriter(file));
+		StringBuilder header = new StringBuilder("time,firms");
+		for (Branch branch : Branch.values())
+			header.append(",n_").append(branch);
+		header.append(",steps_total,steps_mean");
+		for (int k = 0; k < BranchCounters.STEP_BUCKETS; k++)
+			header.append(",steps_").append(BranchCounters.getBucketLabel(k));
+		out.write(header.toString());
+		out.newLine();
+	}
+
+	public void write(BranchCounters counters) throws IOException {
+		StringBuilder row = new StringBuilder();
+		row.append(counters.getTime()).append(',').append(counters.getFirms());
+		for (Branch branch : Branch.values())
+			row.append(',').append(counters.getCount(branch));
+		row.append(',').append(counters.getTotalSteps()).append(',')
+				.append(counters.getFirms() > 0 ? (double) counters.getTotalSteps() / counters.getFirms() : Double.NaN);
+		for (int k = 0; k < BranchCounters.STEP_BUCKETS; k++)
+			row.append(',').append(counters.getStepCount(k));
+		out.write(row.toString());
+		out.newLine();
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+}
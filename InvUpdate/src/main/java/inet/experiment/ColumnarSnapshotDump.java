@@ -0,0 +1,34 @@
+package inet.experiment;
+
+import inet.model.FirmSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ColumnarSnapshotDump {
+
+	// Converts a columnar snapshot file (CFirm.iucol, written by IUCollector when exportToColumnar is on) to .csv, one
+	// row per firm and per snapshot (see SnapshotCsvWriter).
+	// Usage: ColumnarSnapshotDump <columnar file> [<csv file>], the csv file defaulting to the columnar file with .csv
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			System.err.println("Usage: ColumnarSnapshotDump <columnar file> [<csv file>]");
+			System.exit(1);
+		}
+
+		File in = new File(args[0]);
+		File out = new File(args.length > 1 ? args[1] : args[0].replaceFirst("(\\.iucol)?$", ".csv"));
+		final SnapshotCsvWriter csv = new SnapshotCsvWriter(out);
+		try {
+			ColumnarSnapshotWriter.read(in, new ColumnarSnapshotWriter.SnapshotHandler() {
+				public void handle(FirmSnapshot snapshot) throws IOException {
+					csv.write(snapshot);
+				}
+			});
+		} finally {
+			csv.close();
+		}
+	}
+
+}
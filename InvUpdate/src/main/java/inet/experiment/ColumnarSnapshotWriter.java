@@ -0,0 +1,161 @@
+package inet.experiment;
+
+// Append-only columnar binary file of FirmSnapshots, much cheaper to write than the rows of DataExport.
+// File header: MAGIC, VERSION, number of columns, then the name of each column (short length + UTF-8 bytes).
+// One block per snapshot: BLOCK_MAGIC, tick (double), rows (int), columns (int), then the ids of the firms (rows longs)
+// and the columns one after the other (rows doubles each), in the order of the file header. Big-endian throughout.
+// A snapshot of more than BLOCK_ROWS firms is split into consecutive blocks of the same tick, of at most BLOCK_ROWS
+// rows each, s.t. the size of a block stays bounded whatever the population. Each block is written in full before the
+// next one starts, s.t. a file cut short (e.g. by a crash) is readable up to its last complete block.
+
+import inet.model.FirmSnapshot;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+public class ColumnarSnapshotWriter implements SnapshotSink {
+
+	public static final int MAGIC = 0x49554353; // "IUCS"
+	public static final int VERSION = 1;
+	public static final int BLOCK_MAGIC = 0x424c4f43; // "BLOC"
+	static final int BLOCK_HEADER = 4 + 8 + 4 + 4;
+	static final int BLOCK_ROWS = 1 << 18; // about 35 MB per block with 16 columns
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final FileChannel channel;
+	private ByteBuffer buffer; // one block, reused
+
+	public ColumnarSnapshotWriter(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+
+		int length = 12;
+		for (String column : FirmSnapshot.COLUMNS)
+			length += 2 + column.getBytes(UTF8).length;
+		ByteBuffer header = ByteBuffer.allocate(length);
+		header.putInt(MAGIC).putInt(VERSION).putInt(FirmSnapshot.COLUMNS.length);
+		for (String column : FirmSnapshot.COLUMNS) {
+			byte[] name = column.getBytes(UTF8);
+			header.putShort((short) name.length).put(name);
+		}
+		header.flip();
+		writeFully(header);
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	public void write(FirmSnapshot snapshot) throws IOException {
+		int size = snapshot.size();
+		int from = 0;
+		do {
+			int rows = Math.min(BLOCK_ROWS, size - from);
+			writeBlock(snapshot, from, rows);
+			from += rows;
+		} while (from < size);
+	}
+
+	// the rows from .. from + rows of the snapshot as one block
+	private void writeBlock(FirmSnapshot snapshot, int from, int rows) throws IOException {
+		int columns = FirmSnapshot.COLUMNS.length;
+		int length = BLOCK_HEADER + rows * 8 * (1 + columns); // at most BLOCK_ROWS rows
+		if (buffer == null || buffer.capacity() < length)
+			buffer = ByteBuffer.allocateDirect(length);
+		buffer.clear();
+
+		buffer.putInt(BLOCK_MAGIC).putDouble(snapshot.getTime()).putInt(rows).putInt(columns);
+		buffer.asLongBuffer().put(snapshot.getIds(), from, rows);
+		buffer.position(buffer.position() + rows * 8);
+		for (int k = 0; k < columns; k++) {
+			buffer.asDoubleBuffer().put(snapshot.getColumn(k), from, rows);
+			buffer.position(buffer.position() + rows * 8);
+		}
+		buffer.flip();
+		writeFully(buffer);
+	}
+
+	private void writeFully(ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining())
+			channel.write(bytes);
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// reads back a file written by a ColumnarSnapshotWriter, one snapshot per block: a snapshot split into several
+	// blocks reaches the handler in as many parts, of the same time. The snapshot handed to the handler is reused from
+	// one block to the next. Blocks are read one column at a time, s.t. those of files written before blocks were
+	// bounded read as well
+	public static void read(File file, SnapshotHandler handler) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		FileChannel channel = raf.getChannel();
+		try {
+			ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+			readFully(channel, header, 12, file);
+			if (header.getInt() != MAGIC)
+				throw new IOException(file + " is not a columnar snapshot file");
+			if (header.getInt() != VERSION)
+				throw new IOException(file + ": unsupported version");
+			int[] columns = new int[header.getInt()]; // index in FirmSnapshot.COLUMNS of each column of the file
+			for (int k = 0; k < columns.length; k++) {
+				readFully(channel, header, 2, file);
+				ByteBuffer name = ByteBuffer.allocate(header.getShort());
+				readFully(channel, name, name.capacity(), file);
+				columns[k] = FirmSnapshot.column(new String(name.array(), UTF8));
+			}
+
+			FirmSnapshot snapshot = new FirmSnapshot(0);
+			ByteBuffer block = null;
+			while (channel.position() < channel.size()) {
+				readFully(channel, header, BLOCK_HEADER, file);
+				if (header.getInt() != BLOCK_MAGIC)
+					throw new IOException(file + " is corrupted at offset " + (channel.position() - BLOCK_HEADER));
+				double time = header.getDouble();
+				int rows = header.getInt();
+				if (header.getInt() != columns.length)
+					throw new IOException(file + ": block with a wrong number of columns at time " + time);
+				long length = (long) rows * 8 * (1 + columns.length);
+				if (rows < 0 || rows > Integer.MAX_VALUE / 8 || channel.position() + length > channel.size())
+					throw new IOException(file + " is truncated or corrupted at time " + time);
+
+				int column = rows * 8;
+				if (block == null || block.capacity() < column)
+					block = ByteBuffer.allocateDirect(column);
+				snapshot.reset(time, rows);
+				readFully(channel, block, column, file);
+				block.asLongBuffer().get(snapshot.getIds(), 0, rows);
+				for (int k = 0; k < columns.length; k++) {
+					readFully(channel, block, column, file);
+					block.asDoubleBuffer().get(snapshot.getColumn(columns[k]), 0, rows);
+				}
+				handler.handle(snapshot);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	// reads exactly length bytes into bytes, then flips it
+	private static void readFully(FileChannel channel, ByteBuffer bytes, int length, File file) throws IOException {
+		bytes.clear();
+		bytes.limit(length);
+		while (bytes.hasRemaining())
+			if (channel.read(bytes) < 0)
+				throw new EOFException(file + " is truncated");
+		bytes.flip();
+	}
+
+	public interface SnapshotHandler {
+		void handle(FirmSnapshot snapshot) throws IOException;
+	}
+
+}
@@ -0,0 +1,46 @@
+package inet.experiment;
+
+import inet.model.Branch;
+import inet.model.DecisionTrace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+public class DecisionTraceDump {
+
+	// Converts a decision trace (decisions.trace, written by IUModel when traceDecisions is on) to readable text.
+	// Usage: DecisionTraceDump <trace file> [<text file>], prints to the console if no text file is given
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			System.err.println("Usage: DecisionTraceDump <trace file> [<text file>]");
+			System.exit(1);
+		}
+
+		final Writer out = new BufferedWriter(args.length > 1 ? new FileWriter(args[1]) : new OutputStreamWriter(System.out));
+		final Branch[] branches = Branch.values();
+		try {
+			DecisionTrace.read(new File(args[0]), new DecisionTrace.RecordHandler() {
+				public void handle(long[] record) throws IOException {
+					Branch branch = branches[(int) record[2]];
+					out.write("t = " + Double.longBitsToDouble(record[0]) +
+							"\tfirm " + record[1] +
+							"\t" + branch + " (" + branch.getDescription() + ")" +
+							"\n\t q = " + Double.longBitsToDouble(record[3]) +
+							"\t invEStar = " + Double.longBitsToDouble(record[4]) +
+							"\t nwPrime = " + Double.longBitsToDouble(record[5]) +
+							"\t lProd = " + Double.longBitsToDouble(record[6]) +
+							"\t lDebt = " + Double.longBitsToDouble(record[7]) +
+							"\t payment = " + Double.longBitsToDouble(record[8]) + "\n");
+				}
+			});
+		} finally {
+			out.close();
+		}
+	}
+
+}
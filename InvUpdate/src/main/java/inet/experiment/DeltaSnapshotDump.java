@@ -0,0 +1,47 @@
+package inet.experiment;
+
+import inet.model.FirmSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+
+public class DeltaSnapshotDump {
+
+	// Rebuilds the full cross-sections of a delta snapshot file (CFirm.iudelta, written by IUCollector when exportDeltas
+	// is on) and writes them to .csv, one row per firm and per snapshot (see SnapshotCsvWriter).
+	// Usage: DeltaSnapshotDump <delta file> [<csv file>] [-t <time>], the csv file defaulting to the delta file with
+	// .csv; with -t, only the cross-section at the given time is written
+	public static void main(String[] args) throws IOException {
+
+		String in = null, out = null;
+		Double time = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-t") && i + 1 < args.length)
+				time = Double.parseDouble(args[++i]);
+			else if (in == null)
+				in = args[i];
+			else
+				out = args[i];
+		}
+		if (in == null) {
+			System.err.println("Usage: DeltaSnapshotDump <delta file> [<csv file>] [-t <time>]");
+			System.exit(1);
+		}
+		if (out == null)
+			out = in.replaceFirst("(\\.iudelta)?$", time == null ? ".csv" : "_" + time + ".csv");
+
+		final Double only = time;
+		final SnapshotCsvWriter csv = new SnapshotCsvWriter(new File(out));
+		try {
+			DeltaSnapshotWriter.read(new File(in), new ColumnarSnapshotWriter.SnapshotHandler() {
+				public void handle(FirmSnapshot snapshot) throws IOException {
+					if (only == null || snapshot.getTime() == only)
+						csv.write(snapshot);
+				}
+			});
+		} finally {
+			csv.close();
+		}
+	}
+
+}
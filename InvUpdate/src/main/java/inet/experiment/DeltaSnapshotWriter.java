@@ -0,0 +1,190 @@
+package inet.experiment;
+
+// Incremental binary file of FirmSnapshots: a full keyframe every keyframeInterval snapshots and, in between, only the
+// values that changed since the previous snapshot. Values are compared bit for bit, s.t. the snapshots rebuilt by
+// read() are exactly the ones written.
+// File header: MAGIC, VERSION, number of columns, then the name of each column (as writeUTF).
+// Keyframe: KEYFRAME, time (double), rows (int), the ids (rows longs), then the columns one after the other (rows
+// doubles each). Delta: DELTA, time (double), then per column the number of changes (int) followed, unless 0 or all
+// the rows, by a bitmap of the rows that changed (one bit per row of the keyframe, in longs), and by the new values
+// in the order of the rows. A column that does not change costs 4 bytes, one where all the firms change costs as much
+// as in a keyframe. A keyframe is also written whenever the firms differ from the previous snapshot.
+
+import inet.model.FirmSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class DeltaSnapshotWriter implements SnapshotSink {
+
+	public static final int MAGIC = 0x49554445; // "IUDE"
+	public static final int VERSION = 1;
+	static final byte KEYFRAME = 'K';
+	static final byte DELTA = 'D';
+
+	private final DataOutputStream out;
+	private final int keyframeInterval;
+
+	private int sinceKeyframe; // snapshots written since the last keyframe
+	private FirmSnapshot previous; // copy of the last snapshot written, null before the first one
+
+	private long[] bitmap = new long[0]; // rows changed in a column, reused
+
+	public DeltaSnapshotWriter(File file, int keyframeInterval) throws IOException {
+		this.keyframeInterval = Math.max(1, keyframeInterval);
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(FirmSnapshot.COLUMNS.length);
+		for (String column : FirmSnapshot.COLUMNS)
+			out.writeUTF(column);
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	public void write(FirmSnapshot snapshot) throws IOException {
+		if (previous == null || sinceKeyframe + 1 >= keyframeInterval || !sameFirms(snapshot)) {
+			writeKeyframe(snapshot);
+			sinceKeyframe = 0;
+		} else {
+			writeDelta(snapshot);
+			sinceKeyframe++;
+		}
+		copy(snapshot);
+	}
+
+	private void writeKeyframe(FirmSnapshot snapshot) throws IOException {
+		int rows = snapshot.size();
+		out.writeByte(KEYFRAME);
+		out.writeDouble(snapshot.getTime());
+		out.writeInt(rows);
+		for (int i = 0; i < rows; i++)
+			out.writeLong(snapshot.getId(i));
+		for (int k = 0; k < FirmSnapshot.COLUMNS.length; k++) {
+			double[] column = snapshot.getColumn(k);
+			for (int i = 0; i < rows; i++)
+				out.writeDouble(column[i]);
+		}
+	}
+
+	private void writeDelta(FirmSnapshot snapshot) throws IOException {
+		int rows = snapshot.size();
+		out.writeByte(DELTA);
+		out.writeDouble(snapshot.getTime());
+		for (int k = 0; k < FirmSnapshot.COLUMNS.length; k++) {
+			double[] column = snapshot.getColumn(k);
+			double[] last = previous.getColumn(k);
+			if (bitmap.length < (rows + 63) / 64)
+				bitmap = new long[(rows + 63) / 64];
+			Arrays.fill(bitmap, 0L);
+			int count = 0;
+			for (int i = 0; i < rows; i++) {
+				if (Double.doubleToRawLongBits(column[i]) != Double.doubleToRawLongBits(last[i])) {
+					bitmap[i >>> 6] |= 1L << i;
+					count++;
+				}
+			}
+			out.writeInt(count);
+			if (count == 0)
+				continue;
+			if (count < rows)
+				for (int w = 0; w < (rows + 63) / 64; w++)
+					out.writeLong(bitmap[w]);
+			for (int i = 0; i < rows; i++)
+				if (count == rows || (bitmap[i >>> 6] & (1L << i)) != 0)
+					out.writeDouble(column[i]);
+		}
+	}
+
+	private boolean sameFirms(FirmSnapshot snapshot) {
+		if (snapshot.size() != previous.size())
+			return false;
+		for (int i = 0; i < snapshot.size(); i++)
+			if (snapshot.getId(i) != previous.getId(i))
+				return false;
+		return true;
+	}
+
+	private void copy(FirmSnapshot snapshot) {
+		if (previous == null)
+			previous = new FirmSnapshot(snapshot.size());
+		previous.reset(snapshot.getTime(), snapshot.size());
+		System.arraycopy(snapshot.getIds(), 0, previous.getIds(), 0, snapshot.size());
+		for (int k = 0; k < FirmSnapshot.COLUMNS.length; k++)
+			System.arraycopy(snapshot.getColumn(k), 0, previous.getColumn(k), 0, snapshot.size());
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+	// rebuilds the full snapshots of a file written by a DeltaSnapshotWriter, in order. The snapshot handed to the
+	// handler is reused from one block to the next
+	public static void read(File file, ColumnarSnapshotWriter.SnapshotHandler handler) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a delta snapshot file");
+			if (in.readInt() != VERSION)
+				throw new IOException(file + ": unsupported version");
+			int[] columns = new int[in.readInt()]; // index in FirmSnapshot.COLUMNS of each column of the file
+			for (int k = 0; k < columns.length; k++)
+				columns[k] = FirmSnapshot.column(in.readUTF());
+
+			FirmSnapshot snapshot = new FirmSnapshot(0);
+			long[] changed = new long[0];
+			boolean keyframe = false; // read so far
+			int type;
+			while ((type = in.read()) >= 0) {
+				double time = in.readDouble();
+				if (type == KEYFRAME) {
+					int rows = in.readInt();
+					snapshot.reset(time, rows);
+					for (int i = 0; i < rows; i++)
+						snapshot.getIds()[i] = in.readLong();
+					for (int k = 0; k < columns.length; k++) {
+						double[] column = snapshot.getColumn(columns[k]);
+						for (int i = 0; i < rows; i++)
+							column[i] = in.readDouble();
+					}
+					keyframe = true;
+				} else if (type == DELTA && keyframe) {
+					int rows = snapshot.size();
+					snapshot.reset(time, rows);
+					if (changed.length < (rows + 63) / 64)
+						changed = new long[(rows + 63) / 64];
+					for (int k = 0; k < columns.length; k++) {
+						double[] column = snapshot.getColumn(columns[k]);
+						int count = in.readInt();
+						if (count == 0)
+							continue;
+						if (count < rows)
+							for (int w = 0; w < (rows + 63) / 64; w++)
+								changed[w] = in.readLong();
+						for (int i = 0; i < rows; i++)
+							if (count == rows || (changed[i >>> 6] & (1L << i)) != 0)
+								column[i] = in.readDouble();
+					}
+				} else {
+					throw new IOException(file + " is corrupted: unexpected block type " + type + " at time " + time);
+				}
+				handler.handle(snapshot);
+			}
+		} catch (EOFException e) {
+			throw new IOException(file + " is truncated", e);
+		} finally {
+			in.close();
+		}
+	}
+
+}
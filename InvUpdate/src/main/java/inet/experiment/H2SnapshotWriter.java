@@ -0,0 +1,121 @@
+package inet.experiment;
+
+// Bulk writer of FirmSnapshots into the output H2 database, bypassing the JPA entities of DataExport: one batched
+// prepared statement per snapshot, primitive values bound straight from the columns of the snapshot, one transaction
+// per snapshot. Writes the rows DataExport would write into its table, CFIRM (the key of each firm: ID,
+// SIMULATION_TIME and SIMULATION_RUN, as PanelEntityKey, the other fields of CFirm being transient), s.t. the queries
+// on CFIRM keep working; only these columns are inserted, the table being left as DataExport (Hibernate) defines it if
+// it exists. The state of the firms goes into an additional table, CFIRM_STATE: same key, then one DOUBLE column per
+// column of FirmSnapshot. Both tables are created if needed.
+
+import inet.model.FirmSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class H2SnapshotWriter implements SnapshotSink {
+
+	public static final String TABLE = "CFIRM";
+	public static final String STATE_TABLE = "CFIRM_STATE";
+
+	private final Connection connection;
+	private final PreparedStatement insertKey;
+	private final PreparedStatement insert;
+	private final long simulationRun;
+	private final int batchSize;
+
+	public H2SnapshotWriter(String url, long simulationRun, int batchSize) throws SQLException {
+		this.simulationRun = simulationRun;
+		this.batchSize = Math.max(1, batchSize);
+
+		connection = DriverManager.getConnection(url, "sa", "");
+		try {
+			Statement ddl = connection.createStatement();
+			try {
+				ddl.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (ID BIGINT NOT NULL, SIMULATION_TIME DOUBLE NOT NULL, "
+						+ "SIMULATION_RUN BIGINT NOT NULL, PRIMARY KEY (ID, SIMULATION_RUN, SIMULATION_TIME))");
+				StringBuilder table = new StringBuilder("CREATE TABLE IF NOT EXISTS " + STATE_TABLE
+						+ " (ID BIGINT NOT NULL, SIMULATION_TIME DOUBLE NOT NULL, SIMULATION_RUN BIGINT NOT NULL");
+				for (String column : FirmSnapshot.COLUMNS)
+					table.append(", ").append(column).append(" DOUBLE");
+				ddl.execute(table.append(", PRIMARY KEY (ID, SIMULATION_RUN, SIMULATION_TIME))").toString());
+			} finally {
+				ddl.close();
+			}
+
+			insertKey = connection.prepareStatement("INSERT INTO " + TABLE + " (ID, SIMULATION_TIME, SIMULATION_RUN) VALUES (?, ?, ?)");
+			StringBuilder sql = new StringBuilder("INSERT INTO " + STATE_TABLE + " (ID, SIMULATION_TIME, SIMULATION_RUN");
+			for (String column : FirmSnapshot.COLUMNS)
+				sql.append(", ").append(column);
+			sql.append(") VALUES (?, ?, ?");
+			for (int k = 0; k < FirmSnapshot.COLUMNS.length; k++)
+				sql.append(", ?");
+			insert = connection.prepareStatement(sql.append(')').toString());
+			connection.setAutoCommit(false);
+		} catch (SQLException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	// in the output database of JAS-mine, that of DataExport (persistence unit sim-model-out, whose [output-path] is
+	// database/out in the output folder of the experiment)
+	public H2SnapshotWriter(File outputFolder, long simulationRun, int batchSize) throws SQLException {
+		this("jdbc:h2:file:" + new File(new File(outputFolder, "database"), "out").getAbsolutePath(), simulationRun, batchSize);
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// inserts all the rows of the snapshot, committed as a whole or not at all
+	public void write(FirmSnapshot snapshot) throws IOException {
+		int columns = FirmSnapshot.COLUMNS.length;
+		try {
+			for (int i = 0; i < snapshot.size(); i++) {
+				insertKey.setLong(1, snapshot.getId(i));
+				insertKey.setDouble(2, snapshot.getTime());
+				insertKey.setLong(3, simulationRun);
+				insertKey.addBatch();
+				insert.setLong(1, snapshot.getId(i));
+				insert.setDouble(2, snapshot.getTime());
+				insert.setLong(3, simulationRun);
+				for (int k = 0; k < columns; k++)
+					insert.setDouble(4 + k, snapshot.get(k, i));
+				insert.addBatch();
+				if ((i + 1) % batchSize == 0) {
+					insertKey.executeBatch();
+					insert.executeBatch();
+				}
+			}
+			insertKey.executeBatch();
+			insert.executeBatch();
+			connection.commit();
+		} catch (SQLException e) {
+			try {
+				insertKey.clearBatch();
+				insert.clearBatch();
+				connection.rollback();
+			} catch (SQLException rollback) {
+				e.addSuppressed(rollback);
+			}
+			throw new IOException("Could not insert the snapshot at time " + snapshot.getTime(), e);
+		}
+	}
+
+	public void close() throws IOException {
+		try {
+			insertKey.close();
+			insert.close();
+			connection.close();
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+}
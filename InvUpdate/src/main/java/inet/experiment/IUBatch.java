@@ -0,0 +1,220 @@
+package inet.experiment;
+
+import inet.model.AdjustmentSolver;
+import inet.model.CreditMarket;
+import inet.model.IUModel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+public class IUBatch {
+
+	// Headless run of one IUModel, for batch jobs: no SimulationEngine, no MicrosimShell or MultiRunFrame, no observer,
+	// hence no Swing/AWT class is loaded. The model is stepped outside of the engine (IUModel.step(), as in
+	// ReplicationExecutor), its outputs going through an IUCollector used without the engine (buildOutputs(), dumpTick()
+	// and closeOutputs(), as in ReplicationExecutor). The database export goes through H2SnapshotWriter (JDBC):
+	// Hibernate and the persistence unit are never bootstrapped, and the database is not opened at all unless
+	// exportToDatabase (off by default, unlike the collector's).
+	// Settings are read from a properties file (-c) and/or name=value arguments, the latter last: the settings of
+	// the model and of the outputs below, any other name being a parameter of the calibration (see Parameters).
+	// The seed of the run is 1 unless set (seed), s.t. a batch run never depends on the random generator of the
+	// engine; a run restored from a checkpoint keeps the seed of the checkpoint.
+	// Logs the time from the start of the JVM to the end of the first tick, s.t. the cost of starting a run can be
+	// told apart from the simulation.
+
+	private final static Logger log = Logger.getLogger(IUBatch.class);
+
+	private final IUModel model = new IUModel();
+	private final IUCollector collector = new IUCollector(model);
+
+	private File outputFolder = new File("output", "IUBatch_" + System.currentTimeMillis());
+
+	private long seed = 1L;		//Seed of the run, see IUModel.runSeed
+
+	public IUBatch() {
+		collector.setExportToDatabase(false);
+	}
+
+	// ---------------------------------------------------------------------
+	// Settings
+	// ---------------------------------------------------------------------
+
+	// sets a setting of the run, or else a parameter of the calibration (fails on unknown parameters)
+	public void set(String name, String value) {
+		value = value.trim();
+		if (name.equals("numberOfAgents"))
+			model.setNumberOfAgents(Integer.parseInt(value));
+		else if (name.equals("endTime"))
+			model.setEndTime(Double.parseDouble(value));
+		else if (name.equals("pMarkUp"))
+			model.setpMarkUp(Double.parseDouble(value));
+		else if (name.equals("seed"))
+			seed = Long.parseLong(value);
+		else if (name.equals("structureOfArrays"))
+			model.setStructureOfArrays(Boolean.parseBoolean(value));
+		else if (name.equals("offHeap"))
+			model.setOffHeap(Boolean.parseBoolean(value));
+		else if (name.equals("offHeapFile"))
+			model.setOffHeapFile(value);
+		else if (name.equals("fusedTick"))
+			model.setFusedTick(Boolean.parseBoolean(value));
+		else if (name.equals("parallelism"))
+			model.setParallelism(Integer.parseInt(value));
+		else if (name.equals("adjustmentSolver"))
+			model.setAdjustmentSolver(AdjustmentSolver.valueOf(value));
+		else if (name.equals("creditMarket"))
+			model.setCreditMarket(CreditMarket.valueOf(value));
+		else if (name.equals("calibrationFile"))
+			model.setCalibrationFile(value);
+		else if (name.equals("restoreFrom"))
+			model.setRestoreFrom(value);
+		else if (name.equals("flightRecording"))
+			model.setFlightRecording(value);
+		else if (name.equals("output"))
+			outputFolder = new File(value);
+		else if (name.equals("exportToCSV"))
+			collector.setExportToCSV(Boolean.parseBoolean(value));
+		else if (name.equals("exportToDatabase"))
+			collector.setExportToDatabase(Boolean.parseBoolean(value));
+		else if (name.equals("exportToColumnar"))
+			collector.setExportToColumnar(Boolean.parseBoolean(value));
+		else if (name.equals("exportDeltas"))
+			collector.setExportDeltas(Boolean.parseBoolean(value));
+		else if (name.equals("keyframeInterval"))
+			collector.setKeyframeInterval(Integer.parseInt(value));
+		else if (name.equals("databaseBatchSize"))
+			collector.setDatabaseBatchSize(Integer.parseInt(value));
+		else if (name.equals("asyncExport"))
+			collector.setAsyncExport(Boolean.parseBoolean(value));
+		else if (name.equals("exportAggregates"))
+			collector.setExportAggregates(Boolean.parseBoolean(value));
+		else if (name.equals("exportBranchCounters"))
+			collector.setExportBranchCounters(Boolean.parseBoolean(value));
+		else if (name.equals("sampleSize"))
+			collector.setSampleSize(Integer.parseInt(value));
+		else if (name.equals("samplingSeed"))
+			collector.setSamplingSeed(Long.parseLong(value));
+		else if (name.equals("timeOfFirstSnapshot"))
+			collector.setTimeOfFirstSnapshot(Double.parseDouble(value));
+		else if (name.equals("timestepsBetweenSnapshots"))
+			collector.setTimestepsBetweenSnapshots(Double.parseDouble(value));
+		else
+			model.setCalibrationOverride(name, Double.parseDouble(value));
+	}
+
+	public void load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		// sorted, s.t. the settings do not depend on the order of the hash table
+		Map<String, String> settings = new TreeMap<String, String>();
+		for (String name : properties.stringPropertyNames())
+			settings.put(name, properties.getProperty(name));
+		for (Map.Entry<String, String> setting : settings.entrySet())
+			set(setting.getKey(), setting.getValue());
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// builds and steps the model from its start time to endTime, writing the outputs at their times
+	public void run() {
+
+		long start = System.currentTimeMillis();
+		outputFolder.mkdirs();
+		model.setRunSeed(seed);
+		model.buildObjects();
+		long built = System.currentTimeMillis();
+
+		try {
+			collector.buildOutputs(outputFolder, 1L, true);
+
+			// same ticks as the engine: one per unit of time, the one at endTime included
+			for (double time = model.getStartTime(); time <= model.getEndTime(); time++) {
+				model.step(time);
+				if (time == model.getStartTime())
+					reportFirstTick(start, built, System.currentTimeMillis());
+				collector.dumpTick(time);
+			}
+		} finally {
+			collector.closeOutputs();
+			model.stopFlightRecording();
+			model.shutdownPool();
+		}
+		log.info("Run of " + model.getNumberOfAgents() + " firms to time " + model.getEndTime() + " done in "
+				+ (System.currentTimeMillis() - start) + " ms, outputs in " + outputFolder);
+	}
+
+	// time from the start of the JVM to the end of the first tick, and its parts
+	private void reportFirstTick(long start, long built, long firstTick) {
+		long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+		log.info("Time to first tick: " + (firstTick - jvmStart) + " ms (JVM start to run " + (start - jvmStart)
+				+ " ms, buildObjects " + (built - start) + " ms, first tick " + (firstTick - built) + " ms)");
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public IUModel getModel() {
+		return model;
+	}
+
+	public IUCollector getCollector() {
+		return collector;
+	}
+
+	public File getOutputFolder() {
+		return outputFolder;
+	}
+
+	// ---------------------------------------------------------------------
+	// Command line
+	// ---------------------------------------------------------------------
+
+	// e.g. -c batch.properties numberOfAgents=100000 endTime=50 pMarkUp=0.8 seed=42 exportToCSV=false exportAggregates=true
+	public static void main(String[] args) {
+
+		IUBatch batch = new IUBatch();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-c")) {			//Properties file of settings, applied before the following arguments
+					batch.load(new File(args[++i]));
+				} else {
+					int eq = args[i].indexOf('=');
+					if (eq <= 0)
+						throw new IllegalArgumentException("Argument " + args[i] + " must be of the form name=value");
+					batch.set(args[i].substring(0, eq), args[i].substring(eq + 1));
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Could not read the settings: " + e.getMessage());
+			System.exit(1);
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: IUBatch [-c settings.properties] [name=value ...]");
+			System.exit(1);
+		}
+
+		try {
+			batch.run();
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+}
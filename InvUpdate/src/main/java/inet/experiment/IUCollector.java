@@ -3,25 +3,73 @@ package inet.experiment;
 import microsim.annotation.GUIparameter;
 import microsim.data.DataExport;
 import microsim.engine.AbstractSimulationCollectorManager;
+import microsim.engine.EngineListener;
+import microsim.engine.SimulationEngine;
 import microsim.engine.SimulationManager;
 import microsim.event.EventGroup;
 import microsim.event.EventListener;
 import microsim.event.Order;
+import microsim.event.SystemEventType;
 
 import org.apache.log4j.Logger;
 
+import inet.model.CFirm;
+import inet.model.FirmSnapshot;
+import inet.model.FlightRecording;
 import inet.model.IUModel;
+import inet.model.OffHeapFirmPopulation;
+import inet.model.TickPhaseEvent;
 
-public class IUCollector extends AbstractSimulationCollectorManager implements EventListener {
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class IUCollector extends AbstractSimulationCollectorManager implements EventListener, EngineListener {
 
 	private final static Logger log = Logger.getLogger(IUCollector.class);
 
+	static final int SNAPSHOT_PART = 1 << 18;		//Firms copied and written at once, s.t. a snapshot of a large population is never copied in full
+
 	@GUIparameter(description = "Toggle to export snapshot to .csv files")
 	boolean exportToCSV = true;				//If true, data will be recorded to .csv files in the output directory
 
 	@GUIparameter(description = "Toggle to export snapshot to output database")
 	boolean exportToDatabase = true;		//If true, data will be recorded in the output database in the output directory
 
+	@GUIparameter(description = "Toggle to export snapshot to a columnar binary file (CFirm.iucol)")
+	boolean exportToColumnar = false;		//If true, data will be appended to a columnar binary file in the output directory, see ColumnarSnapshotDump to convert it to .csv
+
+	@GUIparameter(description = "Toggle to export snapshot incrementally: keyframes, and only the changes in between (CFirm.iudelta)")
+	boolean exportDeltas = false;			//If true, see DeltaSnapshotDump to rebuild the cross-sections
+
+	@GUIparameter(description = "Set the number of snapshots between two full keyframes of the incremental export")
+	Integer keyframeInterval = 10;
+
+	@GUIparameter(description = "Toggle to write the output database in bulk (batched JDBC) rather than through DataExport")
+	boolean bulkDatabaseExport = false;		//If true (and exportToDatabase), the firms are inserted in batches into CFIRM as DataExport, with their state variables in CFIRM_STATE, see H2SnapshotWriter; always the case if the firms are off the heap
+
+	@GUIparameter(description = "Set the number of rows per batch of the bulk database export")
+	Integer databaseBatchSize = 1000;
+
+	@GUIparameter(description = "Toggle to write the columnar, incremental and bulk database exports on a background thread")
+	boolean asyncExport = false;			//If true, the state of the firms is copied at each snapshot and written by the row writers while the simulation goes on; DataExport, if any, is still synchronous
+
+	@GUIparameter(description = "Toggle to export the distribution of the allocation of the firms, one row per tick (aggregates.csv)")
+	boolean exportAggregates = false;		//If true, means, variances, quantiles and regime shares are computed during the tick; no per-firm output needed
+
+	@GUIparameter(description = "Toggle to export the number of firms through each branch of the decision, one row per tick (branches.csv)")
+	boolean exportBranchCounters = false;	//If true, the branches of each decision and the steps of its adjustment are counted during the tick
+
+	@GUIparameter(description = "Set the number of firms of the exported panel (0 = all firms)")
+	Integer sampleSize = 0;					//If > 0, only a random panel of firms, the same at every snapshot, is exported
+
+	@GUIparameter(description = "Set the seed of the random draw of the exported panel")
+	Long samplingSeed = 1L;
+
 	@GUIparameter(description = "Set the time at which to start exporting snaphots to the database and/or .csv files")
 	Double timeOfFirstSnapshot = 0.;
 
@@ -34,7 +82,19 @@ public class IUCollector extends AbstractSimulationCollectorManager implements E
 
 	//DataExport objects to handle exporting data to database and/or .csv files
 	private DataExport exportAgentsFromDatabase;
-	private DataExport exportAgentsCreated;
+	private DataExport exportAgentsCreated;		//Null unless exportToCSV, or exportToDatabase through DataExport
+
+	private int[] panel;						//Rows of the firms exported, sorted; null = all firms
+	private int exportedFirms;					//Number of firms exported per snapshot
+
+	//Outputs of the state of the firms (columnar file, incremental file, bulk database export), written from a copy of the firms
+	private List<SnapshotSink> sinks = new ArrayList<SnapshotSink>();
+	private FirmSnapshot snapshot;				//Copy of the firms, if written synchronously
+	private int snapshotPart;					//Firms per part of a snapshot: SNAPSHOT_PART, all of them for the incremental export
+	private AsyncSnapshotPipeline pipeline;		//Copies of the firms and their writer, if asyncExport
+
+	private AggregatesCsvWriter aggregates;		//If exportAggregates
+	private BranchCountersCsvWriter branches;	//If exportBranchCounters
 
 	// ---------------------------------------------------------------------
 	// Manager methods
@@ -43,7 +103,98 @@ public class IUCollector extends AbstractSimulationCollectorManager implements E
 	public void buildObjects() {
 
 //		exportAgentsFromDatabase = new DataExport(((IUModel) getManager()).getAgentsLoadedFromDatabase(), exportToDatabase, exportToCSV);
-		exportAgentsCreated = new DataExport(((IUModel) getManager()).getAgentsCreated(), exportToDatabase, exportToCSV);
+		buildOutputs(new File(getEngine().getCurrentExperiment().getOutputFolder()), SimulationEngine.getInstance().getCurrentRunNumber(), false);
+		if (aggregates != null || branches != null || !sinks.isEmpty())
+			getEngine().addEngineListener(this);		//To flush and close the outputs when the simulation stops
+	}
+
+	//Opens the outputs of the model in outputFolder, run being the SIMULATION_RUN of the database. Without the engine
+	//(see dumpTick()), as when the firms are off the heap, there is no DataExport: the .csv file and the database are
+	//written from the rows (SnapshotCsvWriter, H2SnapshotWriter), with the same settings
+	public void buildOutputs(File outputFolder, long run, boolean withoutEngine) {
+
+		IUModel model = (IUModel) getManager();
+		if (sampleSize > 0 && sampleSize < model.getNumberOfAgents())
+			panel = reservoirSample(model.getNumberOfAgents(), sampleSize, samplingSeed);
+		exportedFirms = panel != null ? panel.length : model.getNumberOfAgents();
+
+		//Firms off the heap: no CFirm views, the .csv file and the database are written from the rows (SnapshotCsvWriter, H2SnapshotWriter)
+		boolean offHeap = model.getPopulation() instanceof OffHeapFirmPopulation;
+		if (offHeap && (exportToCSV || exportToDatabase))
+			log.info("Firms off the heap: the .csv and database exports are written from the rows, as CFirm.csv and the bulk database export");
+		boolean fromRows = offHeap || withoutEngine;
+		boolean csvFromRows = exportToCSV && fromRows;
+		boolean bulk = exportToDatabase && (bulkDatabaseExport || fromRows);
+		if ((exportToCSV && !csvFromRows) || (exportToDatabase && !bulk)) {		//DataExport needs CFirm objects: the views of a population are only built then
+			List<CFirm> exported;
+			if (panel == null) {
+				exported = model.getAgentsCreated();
+			} else if (model.getPopulation() != null) {
+				exported = model.getPopulation().getViews(panel);		//Views of the panel only, kept up to date by the model
+			} else {
+				exported = new ArrayList<CFirm>(panel.length);
+				for (int row : panel)
+					exported.add(model.getcFirms().get(row));
+			}
+			exportAgentsCreated = new DataExport(exported, exportToDatabase && !bulk, exportToCSV && !csvFromRows);
+		}
+
+		if (csvFromRows) {
+			File file = new File(outputFolder, "CFirm.csv");
+			try {
+				sinks.add(new SnapshotCsvWriter(file));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not create " + file, e);
+			}
+		}
+		if (exportToColumnar) {
+			File file = new File(outputFolder, "CFirm.iucol");
+			try {
+				sinks.add(new ColumnarSnapshotWriter(file));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not create " + file, e);
+			}
+		}
+		if (exportDeltas) {
+			File file = new File(outputFolder, "CFirm.iudelta");
+			try {
+				sinks.add(new DeltaSnapshotWriter(file, keyframeInterval));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not create " + file, e);
+			}
+		}
+		if (bulk) {
+			try {
+				sinks.add(new H2SnapshotWriter(outputFolder, run, databaseBatchSize));
+			} catch (SQLException e) {
+				throw new RuntimeException("Could not open the output database in " + outputFolder, e);
+			}
+		}
+		if (exportAggregates) {
+			File file = new File(outputFolder, "aggregates.csv");
+			try {
+				aggregates = new AggregatesCsvWriter(file);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not create " + file, e);
+			}
+			model.enableAggregates();
+		}
+		if (exportBranchCounters) {
+			File file = new File(outputFolder, "branches.csv");
+			try {
+				branches = new BranchCountersCsvWriter(file);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not create " + file, e);
+			}
+			model.enableBranchCounters();
+		}
+		if (!sinks.isEmpty()) {
+			snapshotPart = exportDeltas ? Math.max(1, exportedFirms) : SNAPSHOT_PART;		//The incremental export diffs whole snapshots, and keeps a copy of the last one anyway
+			if (asyncExport)
+				pipeline = new AsyncSnapshotPipeline(sinks, exportedFirms, snapshotPart, panel);
+			else
+				snapshot = new FirmSnapshot(Math.min(exportedFirms, snapshotPart));
+		}
 	}
 
 	public void buildSchedule() {
@@ -52,7 +203,19 @@ public class IUCollector extends AbstractSimulationCollectorManager implements E
 
 			eventGroup.addEvent(this, Processes.DumpInfo);
 
-			getEngine().getEventList().scheduleRepeat(eventGroup, timeOfFirstSnapshot, Order.AFTER_ALL.getOrdering()-1, timestepsBetweenSnapshots);
+			getEngine().getEventList().scheduleRepeat(eventGroup, firstSnapshot(), Order.AFTER_ALL.getOrdering()-1, timestepsBetweenSnapshots);
+
+			if (aggregates != null) {		//Every tick, the aggregates being computed anyway
+				EventGroup aggregatesGroup = new EventGroup();
+				aggregatesGroup.addEvent(this, Processes.DumpAggregates);
+				getEngine().getEventList().scheduleRepeat(aggregatesGroup, ((IUModel) getManager()).getStartTime(), Order.AFTER_ALL.getOrdering()-1, 1.);
+			}
+
+			if (branches != null) {			//Every tick, as the aggregates
+				EventGroup branchesGroup = new EventGroup();
+				branchesGroup.addEvent(this, Processes.DumpBranchCounters);
+				getEngine().getEventList().scheduleRepeat(branchesGroup, ((IUModel) getManager()).getStartTime(), Order.AFTER_ALL.getOrdering()-1, 1.);
+			}
 
 	}
 
@@ -62,29 +225,153 @@ public class IUCollector extends AbstractSimulationCollectorManager implements E
 	// ---------------------------------------------------------------------
 
 	public enum Processes {
-		DumpInfo;
+		DumpInfo,
+		DumpAggregates,
+		DumpBranchCounters;
 	}
 
 	public void onEvent(Enum<?> type) {
 		switch ((Processes) type) {
 
 		case DumpInfo:
+			dumpSnapshot(getEngine().getTime());
+			break;
 
-			//Export to database and/or .csv files
-//			exportAgentsFromDatabase.export();
-			exportAgentsCreated.export();
+		case DumpAggregates:
+			dumpAggregates(getEngine().getTime());
+			break;
 
+		case DumpBranchCounters:
+			dumpBranchCounters(getEngine().getTime());
 			break;
 
 		}
 	}
 
+	public void onEngineEvent(SystemEventType event) {
+		if (event == SystemEventType.Stop)
+			closeOutputs();
+	}
+
 
 	// ---------------------------------------------------------------------
 	// Own methods
 	// ---------------------------------------------------------------------
 
+	//Outputs of the tick at the given time, the model being stepped outside of the engine: the snapshot if it is on the grid of snapshots, the aggregates and branch counters every tick
+	public void dumpTick(double time) {
+		if (time >= timeOfFirstSnapshot && (time - timeOfFirstSnapshot) % timestepsBetweenSnapshots == 0)
+			dumpSnapshot(time);
+		if (aggregates != null)
+			dumpAggregates(time);
+		if (branches != null)
+			dumpBranchCounters(time);
+	}
+
+	void dumpSnapshot(double time) {
+
+		TickPhaseEvent event = FlightRecording.AVAILABLE ? TickPhaseEvent.begin("DumpInfo", time, exportedFirms) : null;
+
+		//Export to database and/or .csv files
+//		exportAgentsFromDatabase.export();
+		if (exportAgentsCreated != null)
+			exportAgentsCreated.export();
+
+		try {
+			if (pipeline != null) {
+				pipeline.submit((IUModel) getManager(), time);
+			} else if (snapshot != null) {		//Part by part, the sinks writing each part before the next one is copied
+				int from = 0;
+				do {
+					int to = Math.min(exportedFirms, from + snapshotPart);
+					snapshot.capture((IUModel) getManager(), time, panel, from, to);
+					for (SnapshotSink sink : sinks)
+						sink.write(snapshot);
+					from = to;
+				} while (from < exportedFirms);
+			}
+		} catch (IOException e) {
+			log.error("Could not write the snapshot at time " + time, e);
+		}
+
+		if (event != null)
+			event.commit();
+	}
+
+	void dumpAggregates(double time) {
+		try {
+			aggregates.write(((IUModel) getManager()).getAggregates());
+		} catch (IOException e) {
+			log.error("Could not write the aggregates at time " + time, e);
+		}
+	}
 
+	void dumpBranchCounters(double time) {
+		try {
+			branches.write(((IUModel) getManager()).getBranchCounters());
+		} catch (IOException e) {
+			log.error("Could not write the branch counters at time " + time, e);
+		}
+	}
+
+	//Flushes and closes the outputs; on Stop, or once done stepping the model outside of the engine
+	public void closeOutputs() {
+		if (aggregates != null) {
+			try {
+				aggregates.close();
+			} catch (IOException e) {
+				log.error("Could not close the aggregates", e);
+			}
+			aggregates = null;
+		}
+		if (branches != null) {
+			try {
+				branches.close();
+			} catch (IOException e) {
+				log.error("Could not close the branch counters", e);
+			}
+			branches = null;
+		}
+		if (!sinks.isEmpty()) {
+			try {
+				if (pipeline != null)
+					pipeline.close();		//Writes the snapshots still queued, then closes the sinks
+				else
+					for (SnapshotSink sink : sinks)
+						sink.close();
+			} catch (IOException e) {
+				log.error("Could not write or close the snapshot outputs", e);
+			}
+			sinks.clear();
+			pipeline = null;
+		}
+	}
+
+	//Time of the first snapshot: timeOfFirstSnapshot, or the first time on its grid of snapshots once the model starts (if restored from a checkpoint)
+	double firstSnapshot() {
+		double start = ((IUModel) getManager()).getStartTime();
+		if (start <= timeOfFirstSnapshot)
+			return timeOfFirstSnapshot;
+		return timeOfFirstSnapshot + Math.ceil((start - timeOfFirstSnapshot) / timestepsBetweenSnapshots) * timestepsBetweenSnapshots;
+	}
+
+	//Sorted rows of a uniform random sample of sampleSize firms out of populationSize (reservoir sampling, algorithm R).
+	//The sample only depends on the seed, and is drawn once: the panel is the same at every snapshot
+	static int[] reservoirSample(int populationSize, int sampleSize, long seed) {
+		Random random = new Random(seed);
+		int[] sample = new int[Math.min(sampleSize, populationSize)];
+		for (int i = 0; i < populationSize; i++) {
+			if (i < sample.length) {
+				sample[i] = i;
+			} else {
+				int j = random.nextInt(i + 1);
+				if (j < sample.length)
+					sample[j] = i;
+			}
+		}
+		Arrays.sort(sample);
+		return sample;
+	}
 
 	// ---------------------------------------------------------------------
 	// Access methods
@@ -106,6 +393,86 @@ public class IUCollector extends AbstractSimulationCollectorManager implements E
 		this.exportToDatabase = exportToDatabase;
 	}
 
+	public boolean isExportToColumnar() {
+		return exportToColumnar;
+	}
+
+	public void setExportToColumnar(boolean exportToColumnar) {
+		this.exportToColumnar = exportToColumnar;
+	}
+
+	public boolean isExportDeltas() {
+		return exportDeltas;
+	}
+
+	public void setExportDeltas(boolean exportDeltas) {
+		this.exportDeltas = exportDeltas;
+	}
+
+	public Integer getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	public void setKeyframeInterval(Integer keyframeInterval) {
+		this.keyframeInterval = keyframeInterval;
+	}
+
+	public boolean isBulkDatabaseExport() {
+		return bulkDatabaseExport;
+	}
+
+	public void setBulkDatabaseExport(boolean bulkDatabaseExport) {
+		this.bulkDatabaseExport = bulkDatabaseExport;
+	}
+
+	public Integer getDatabaseBatchSize() {
+		return databaseBatchSize;
+	}
+
+	public void setDatabaseBatchSize(Integer databaseBatchSize) {
+		this.databaseBatchSize = databaseBatchSize;
+	}
+
+	public boolean isAsyncExport() {
+		return asyncExport;
+	}
+
+	public void setAsyncExport(boolean asyncExport) {
+		this.asyncExport = asyncExport;
+	}
+
+	public boolean isExportBranchCounters() {
+		return exportBranchCounters;
+	}
+
+	public void setExportBranchCounters(boolean exportBranchCounters) {
+		this.exportBranchCounters = exportBranchCounters;
+	}
+
+	public boolean isExportAggregates() {
+		return exportAggregates;
+	}
+
+	public void setExportAggregates(boolean exportAggregates) {
+		this.exportAggregates = exportAggregates;
+	}
+
+	public Integer getSampleSize() {
+		return sampleSize;
+	}
+
+	public void setSampleSize(Integer sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	public Long getSamplingSeed() {
+		return samplingSeed;
+	}
+
+	public void setSamplingSeed(Long samplingSeed) {
+		this.samplingSeed = samplingSeed;
+	}
+
 	public Double getTimeOfFirstSnapshot() {
 		return timeOfFirstSnapshot;
 	}
@@ -4,9 +4,14 @@ import microsim.engine.SimulationEngine;
 import microsim.engine.MultiRun;
 import microsim.gui.shell.MultiRunFrame;
 
+import inet.data.Parameters;
 import inet.model.IUModel;
 
-public class IUMultiRun extends MultiRun {
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class IUMultiRun extends MultiRun implements ReplicationExperiment {
 
 	// Experimental design usually involves one of the following:
 	// (a) Running the simulation a given number of times, without changing the values of the parameters (but changing the random number seed)
@@ -14,6 +19,14 @@ public class IUMultiRun extends MultiRun {
 	// In the example, the simulation is repeated a number of times equal to numberOfRepeatedRuns for each population size of agents, 	// specified by the parameter maxNumberOfAgents.
 
 	public static boolean executeWithGui = true;
+	
+	public static Integer workers = 1;		//Number of replications run concurrently, without the engine (see ReplicationExecutor); 1 = through the engine
+	
+	public static Integer forks = 0;		//Number of child JVMs running the replications (see SweepCoordinator); 0 = none
+	
+	public static boolean offHeap = false;	//Store the firms off the heap (direct memory), for populations beyond the heap, see -o
+	
+	private static Map<String, Double> overrides = new LinkedHashMap<String, Double>();		//Overrides of the calibration of every model, see -p
 
 	// Define the parameters that specify the experiment, and assign an initial value (used in the first simulation)
 	private Long counter = 1L;
@@ -33,9 +46,32 @@ public class IUMultiRun extends MultiRun {
 
 		batchModeArgumentParsing(args);		//Used to pass arguments to the main class via the command line if the user wants to run in 'batch mode' outside of Eclipse IDE
 
+		IUMultiRun experimentBuilder = new IUMultiRun();
+		
+		if (forks > 0) {
+			SweepCoordinator coordinator = new SweepCoordinator(forks, new File("output", "IUMultiRun_" + System.currentTimeMillis()), System.nanoTime());
+			try {
+				coordinator.run(experimentBuilder, overrides);
+			} catch (Exception e) {
+				e.printStackTrace();
+				System.exit(1);
+			}
+			return;
+		}
+		
+		if (workers > 1) {
+			ReplicationExecutor executor = new ReplicationExecutor(workers, new File("output", "IUMultiRun_" + System.currentTimeMillis()), System.nanoTime());
+			try {
+				executor.run(experimentBuilder);
+			} catch (Exception e) {
+				e.printStackTrace();
+				System.exit(1);
+			}
+			return;
+		}
+
 		SimulationEngine engine = SimulationEngine.getInstance();
 
-		IUMultiRun experimentBuilder = new IUMultiRun();
 		engine.setExperimentBuilder(experimentBuilder);
 		engine.setup();
 
@@ -56,8 +92,15 @@ public class IUMultiRun extends MultiRun {
 
 		//No need to add observer if running in batch mode
 
+		configure(model);
+	}
+
+	public void configure(IUModel model) {
 		// Overwrite the default values of the parameters of the simulation
 		model.setNumberOfAgents(numberOfAgents);
+		model.setOffHeap(offHeap);
+		for (Map.Entry<String, Double> override : overrides.entrySet())
+			model.setCalibrationOverride(override.getKey(), override.getValue());
 	}
 
 	@Override
@@ -118,6 +161,46 @@ public class IUMultiRun extends MultiRun {
 				executeWithGui = Boolean.parseBoolean(args[i + 1]);
 				i++;
 			}
+			else if (args[i].equals("-o")){			//Toggle the off-heap store of the firms on / off by passing the string '-o true' (on) or '-o false' (off) as a command line argument
+				offHeap = Boolean.parseBoolean(args[i + 1]);
+				i++;
+			}
+			else if (args[i].equals("-w")){			//Set the number of replications run concurrently as a command line argument
+				
+				try {
+					workers = Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+					System.err.println("Argument " + args[i + 1] + " must be an integer reflecting the number of concurrent replications.");
+					System.exit(1);
+				}
+				
+				i++;
+			}
+			else if (args[i].equals("-f")){			//Set the number of child JVMs running the replications as a command line argument
+				
+				try {
+					forks = Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+					System.err.println("Argument " + args[i + 1] + " must be an integer reflecting the number of worker JVMs.");
+					System.exit(1);
+				}
+				
+				i++;
+			}
+			else if (args[i].equals("-p")){			//Override a parameter of the calibration by passing the string '-p name=value' as a command line argument
+				
+				String[] override = args[i + 1].split("=");
+				try {
+					double value = Double.parseDouble(override[1]);
+					Parameters.builder().set(override[0], value);		//Fails on unknown parameters
+					overrides.put(override[0], value);
+				} catch (RuntimeException e) {
+					System.err.println("Argument " + args[i + 1] + " must be of the form name=value, name being a parameter of the calibration.");
+					System.exit(1);
+				}
+				
+				i++;
+			}
 		}
 	}
 
@@ -0,0 +1,289 @@
+package inet.experiment;
+
+import inet.data.Parameters;
+import inet.model.IUModel;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+public class ParameterSweep {
+
+	// Runs one model per point of a SweepDesign, concurrently, without the engine (see ReplicationExecutor). Each point
+	// sets pMarkUp on the model and any other dimension on its calibration (see Parameters), the seed being derived from
+	// the base seed and the index of the point. Once a model reaches endTime, one row is appended to the results file:
+	// the point, its seed, the aggregates of the last tick (see AggregatesCsvWriter) and the time taken. The rows come
+	// in the order the points complete. If the results file exists, the points it holds are skipped, s.t. an interrupted
+	// sweep goes on where it stopped when run again with the same design and base seed.
+
+	private final static Logger log = Logger.getLogger(ParameterSweep.class);
+
+	private final SweepDesign design;
+	private final File results;
+	private final int workers;
+	private final long baseSeed;
+
+	private int numberOfAgents = 1000;
+	private double endTime = 20.;
+	private boolean structureOfArrays = true;
+
+	private BufferedWriter out;
+
+	public ParameterSweep(SweepDesign design, File results, int workers, long baseSeed) {
+		this.design = design;
+		this.results = results;
+		this.workers = workers;
+		this.baseSeed = baseSeed;
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// runs the points not in the results file yet; returns the number of points that failed (not written, hence run
+	// again on the next run)
+	public int run() throws IOException, InterruptedException {
+
+		List<double[]> points = design.points();
+		for (int d = 0; d < design.getNames().length; d++) // fails on unknown parameters
+			apply(new IUModel(), design.getNames()[d], points.get(0)[d]);
+		String header = header();
+		TreeMap<Integer, String> done = readResults(header, points);
+		log.info(points.size() + " points, " + done.size() + " already done");
+
+		// rewritten without a row cut short by the interruption, if any, then appended to
+		File rewritten = new File(results.getPath() + ".tmp");
+		out = new BufferedWriter(new FileWriter(rewritten));
+		out.write(header);
+		out.newLine();
+		for (String row : done.values()) {
+			out.write(row);
+			out.newLine();
+		}
+		out.close();
+		if (results.exists() && !results.delete() || !rewritten.renameTo(results))
+			throw new IOException("Could not replace " + results);
+		out = new BufferedWriter(new FileWriter(results, true));
+
+		final AtomicInteger failed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			for (int index = 0; index < points.size(); index++) {
+				if (done.containsKey(index))
+					continue;
+				final int point = index;
+				final double[] values = points.get(index);
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							write(runPoint(point, values));
+						} catch (Exception e) {
+							log.error("Point " + point + " failed", e);
+							failed.incrementAndGet();
+						}
+					}
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+		return failed.get();
+	}
+
+	// builds and steps the model of the point; returns its row
+	String runPoint(int point, double[] values) {
+		long start = System.currentTimeMillis();
+		long seed = ReplicationExecutor.seed(baseSeed, point);
+
+		IUModel model = new IUModel();
+		model.setNumberOfAgents(numberOfAgents);
+		model.setEndTime(endTime);
+		model.setStructureOfArrays(structureOfArrays);
+		model.setRunSeed(seed);
+		String[] names = design.getNames();
+		for (int d = 0; d < names.length; d++)
+			apply(model, names[d], values[d]);
+		model.enableAggregates();
+		model.buildObjects();
+		for (double time = model.getStartTime(); time <= model.getEndTime(); time++)
+			model.step(time);
+
+		StringBuilder row = new StringBuilder();
+		row.append(point).append(',').append(seed);
+		for (double value : values)
+			row.append(',').append(value);
+		row.append(',');
+		AggregatesCsvWriter.appendRow(row, model.getAggregates());
+		row.append(',').append(System.currentTimeMillis() - start);
+		return row.toString();
+	}
+
+	// sets the parameter name of the model: pMarkUp, or a parameter of the calibration
+	static void apply(IUModel model, String name, double value) {
+		if (name.equals("pMarkUp"))
+			model.setpMarkUp(value);
+		else
+			model.setCalibrationOverride(name, value);
+	}
+
+	// whether the parameter name only takes integers, as dimK (see SweepDesign)
+	static boolean isInteger(String name) {
+		return !name.equals("pMarkUp") && Parameters.Builder.isInteger(name);
+	}
+
+	private synchronized void write(String row) throws IOException {
+		out.write(row);
+		out.newLine();
+		out.flush();
+	}
+
+	private String header() {
+		StringBuilder header = new StringBuilder("point,seed");
+		for (String name : design.getNames())
+			header.append(',').append(name);
+		header.append(',');
+		AggregatesCsvWriter.appendHeader(header);
+		header.append(",ms");
+		return header.toString();
+	}
+
+	// complete rows of the results file, by point; fails if the file is from another sweep
+	private TreeMap<Integer, String> readResults(String header, List<double[]> points) throws IOException {
+		TreeMap<Integer, String> done = new TreeMap<Integer, String>();
+		if (!results.exists())
+			return done;
+
+		int columns = header.split(",").length;
+		int dimensions = design.getNames().length;
+		BufferedReader in = new BufferedReader(new FileReader(results));
+		try {
+			String line = in.readLine();
+			if (line == null)
+				return done;
+			if (!line.equals(header))
+				throw new IOException(results + " holds the results of a sweep over other parameters");
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split(",", -1);
+				if (fields.length != columns || fields[columns - 1].isEmpty())
+					continue; // cut short
+				int point = Integer.parseInt(fields[0]);
+				boolean same = point < points.size() && Long.parseLong(fields[1]) == ReplicationExecutor.seed(baseSeed, point);
+				for (int d = 0; same && d < dimensions; d++)
+					same = Double.parseDouble(fields[2 + d]) == points.get(point)[d];
+				if (!same)
+					throw new IOException(results + " holds the results of another design or base seed (point " + point + ")");
+				done.put(point, line);
+			}
+		} finally {
+			in.close();
+		}
+		return done;
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public int getNumberOfAgents() {
+		return numberOfAgents;
+	}
+
+	public void setNumberOfAgents(int numberOfAgents) {
+		this.numberOfAgents = numberOfAgents;
+	}
+
+	public double getEndTime() {
+		return endTime;
+	}
+
+	public void setEndTime(double endTime) {
+		this.endTime = endTime;
+	}
+
+	public boolean isStructureOfArrays() {
+		return structureOfArrays;
+	}
+
+	public void setStructureOfArrays(boolean structureOfArrays) {
+		this.structureOfArrays = structureOfArrays;
+	}
+
+	// ---------------------------------------------------------------------
+	// Command line
+	// ---------------------------------------------------------------------
+
+	// e.g. -d pMarkUp=0.5:1.5:5 -d r=0.01,0.02,0.05 -d dimK=1,10,40 [-lhs 200] -o sweep.csv
+	public static void main(String[] args) {
+
+		SweepDesign design = new SweepDesign();
+		File results = new File("output", "sweep_results.csv");
+		int workers = Runtime.getRuntime().availableProcessors();
+		long seed = 20170101L;
+		int latinHypercube = 0;
+		Integer numberOfAgents = null;
+		Double endTime = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-d"))			//Dimension of the design: name=v1,v2,... or name=lower:upper[:levels]
+					design.add(args[++i]);
+				else if (args[i].equals("-lhs"))	//Number of points of a Latin hypercube instead of the full grid
+					latinHypercube = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-o"))		//Results file
+					results = new File(args[++i]);
+				else if (args[i].equals("-w"))		//Number of points run concurrently
+					workers = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-s"))		//Base seed
+					seed = Long.parseLong(args[++i]);
+				else if (args[i].equals("-a"))		//Number of agents of each model
+					numberOfAgents = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-e"))		//End time of each model
+					endTime = Double.parseDouble(args[++i]);
+				else
+					throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: ParameterSweep -d name=v1,v2,... | -d name=lower:upper[:levels] ... [-lhs points] [-o results.csv] [-w workers] [-s seed] [-a agents] [-e endTime]");
+			System.exit(1);
+		}
+		if (latinHypercube > 0)
+			design.setLatinHypercube(latinHypercube, seed);
+
+		ParameterSweep sweep = new ParameterSweep(design, results, workers, seed);
+		if (numberOfAgents != null)
+			sweep.setNumberOfAgents(numberOfAgents);
+		if (endTime != null)
+			sweep.setEndTime(endTime);
+		try {
+			if (results.getParentFile() != null)
+				results.getParentFile().mkdirs();
+			int failed = sweep.run();
+			if (failed > 0) {
+				System.err.println(failed + " points failed, run again to retry them");
+				System.exit(1);
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+}
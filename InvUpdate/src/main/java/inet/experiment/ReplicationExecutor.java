@@ -0,0 +1,198 @@
+package inet.experiment;
+
+import inet.model.FirmRandom;
+import inet.model.FirmSnapshot;
+import inet.model.IUModel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+public class ReplicationExecutor {
+
+	// Runs the replications of an experiment concurrently, on a fixed number of workers. The SimulationEngine is a
+	// singleton, hence replications do not go through it: each one builds its own IUModel, steps it (IUModel.step())
+	// from 0 to endTime, with a seed derived from the base seed and the index of the replication, and writes its
+	// outputs to its own sub-directory of the output directory.
+	// The outputs go through an IUCollector per replication, with the settings below (the collector's defaults), but
+	// the collector is not an engine manager here: the .csv file and the database are written from the rows, as when
+	// the firms are off the heap (see IUCollector.buildOutputs()), the replication being its SIMULATION_RUN.
+
+	private final static Logger log = Logger.getLogger(ReplicationExecutor.class);
+
+	private final int workers;
+	private final File outputDirectory;
+	private final long baseSeed;
+
+	//Outputs of each replication, as in IUCollector
+	private boolean exportToCSV = true;
+	private boolean exportToDatabase = true;
+	private int sampleSize = 0;
+	private long samplingSeed = 1L;
+	private double timeOfFirstSnapshot = 0.;
+	private double timestepsBetweenSnapshots = 1.;
+
+	public ReplicationExecutor(int workers, File outputDirectory, long baseSeed) {
+		this.workers = workers;
+		this.outputDirectory = outputDirectory;
+		this.baseSeed = baseSeed;
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// runs all the models of the experiment, from its current one until nextModel() returns false
+	public void run(ReplicationExperiment experiment) throws InterruptedException, ExecutionException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+		try {
+			int index = 0;
+			do {
+				IUModel model = new IUModel();
+				experiment.configure(model);
+				model.setRunSeed(seed(baseSeed, index));
+				runs.add(executor.submit(new Replication(index, experiment.setupRunLabel(), model)));
+				index++;
+			} while (experiment.nextModel());
+
+			for (Future<?> run : runs)
+				run.get(); // rethrows the failure of a replication, if any
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// seed of the replication number index, s.t. a sweep is reproducible from its base seed whatever the number of workers
+	static long seed(long baseSeed, int index) {
+		return new FirmRandom(baseSeed, index).nextLong();
+	}
+
+	// directory of the outputs of a replication
+	File outputDirectory(int index, String label) {
+		return new File(outputDirectory, String.format("%04d_", index) + label.replaceAll("[^A-Za-z0-9._-]+", "_"));
+	}
+
+	private class Replication implements Runnable {
+
+		private final int index;
+		private final String label;
+		private final IUModel model;
+
+		Replication(int index, String label, IUModel model) {
+			this.index = index;
+			this.label = label;
+			this.model = model;
+		}
+
+		public void run() {
+			long start = System.currentTimeMillis();
+			replicate(model, outputDirectory(index, label), index);
+			log.info("Replication " + index + " (" + label + ") done in " + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	// builds the model and steps it from 0 to endTime, writing its outputs to directory as the replication run; returns
+	// the snapshot of all the firms at the last tick
+	FirmSnapshot replicate(IUModel model, File directory, long run) {
+		directory.mkdirs();
+
+		model.buildObjects();
+		IUCollector collector = newCollector(model);
+		try {
+			collector.buildOutputs(directory, run, true);
+
+			// same ticks as the engine: one per unit of time, the one at endTime included
+			double time = model.getStartTime();
+			for (; time <= model.getEndTime(); time++) {
+				model.step(time);
+				collector.dumpTick(time);
+			}
+			FirmSnapshot snapshot = new FirmSnapshot(model.getNumberOfAgents());
+			snapshot.capture(model, time - 1.);
+			return snapshot;
+		} finally {
+			collector.closeOutputs();
+			model.shutdownPool();
+		}
+	}
+
+	IUCollector newCollector(IUModel model) {
+		IUCollector collector = new IUCollector(model);
+		collector.setExportToCSV(exportToCSV);
+		collector.setExportToDatabase(exportToDatabase);
+		collector.setSampleSize(sampleSize);
+		collector.setSamplingSeed(samplingSeed);
+		collector.setTimeOfFirstSnapshot(timeOfFirstSnapshot);
+		collector.setTimestepsBetweenSnapshots(timestepsBetweenSnapshots);
+		return collector;
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public File getOutputDirectory() {
+		return outputDirectory;
+	}
+
+	public boolean isExportToCSV() {
+		return exportToCSV;
+	}
+
+	public void setExportToCSV(boolean exportToCSV) {
+		this.exportToCSV = exportToCSV;
+	}
+
+	public boolean isExportToDatabase() {
+		return exportToDatabase;
+	}
+
+	public void setExportToDatabase(boolean exportToDatabase) {
+		this.exportToDatabase = exportToDatabase;
+	}
+
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	public void setSampleSize(int sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	public long getSamplingSeed() {
+		return samplingSeed;
+	}
+
+	public void setSamplingSeed(long samplingSeed) {
+		this.samplingSeed = samplingSeed;
+	}
+
+	public double getTimeOfFirstSnapshot() {
+		return timeOfFirstSnapshot;
+	}
+
+	public void setTimeOfFirstSnapshot(double timeOfFirstSnapshot) {
+		this.timeOfFirstSnapshot = timeOfFirstSnapshot;
+	}
+
+	public double getTimestepsBetweenSnapshots() {
+		return timestepsBetweenSnapshots;
+	}
+
+	public void setTimestepsBetweenSnapshots(double timestepsBetweenSnapshots) {
+		this.timestepsBetweenSnapshots = timestepsBetweenSnapshots;
+	}
+
+}
@@ -0,0 +1,16 @@
+package inet.experiment;
+
+import inet.model.IUModel;
+
+public interface ReplicationExperiment {
+
+	// Experiment definition that the ReplicationExecutor can run: the same methods as a MultiRun, plus the set-up of the
+	// model of the current run (what buildExperiment() does, without the engine)
+
+	String setupRunLabel();
+
+	void configure(IUModel model);
+
+	boolean nextModel();
+
+}
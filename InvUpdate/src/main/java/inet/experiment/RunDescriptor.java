@@ -0,0 +1,173 @@
+package inet.experiment;
+
+import inet.model.IUModel;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import microsim.annotation.GUIparameter;
+
+public class RunDescriptor {
+
+	// One run of a sweep, as handed by the SweepCoordinator to a SweepWorker: the settings of the model (every
+	// @GUIparameter field of IUModel, as configured by the experiment, e.g. offHeap), the seed of the run and the
+	// overrides of the calibration (see IUModel.setCalibrationOverride()), s.t. the child runs the model the experiment
+	// configured. Sent as a single tab-separated line, the values of the settings URL-encoded.
+
+	final int index;
+	final String label;
+	final long seed;
+	final Map<String, String> settings; // by name of the field of IUModel
+	final Map<String, Double> overrides;
+
+	int attempts; // handed to a worker so far, coordinator side only
+
+	RunDescriptor(int index, String label, long seed, Map<String, String> settings, Map<String, Double> overrides) {
+		this.index = index;
+		this.label = label.replace('\t', ' ');
+		this.seed = seed;
+		this.settings = new TreeMap<String, String>(settings);
+		this.overrides = new LinkedHashMap<String, Double>(overrides);
+	}
+
+	// descriptor of a model configured by an experiment, with overrides on top of those of the model
+	RunDescriptor(int index, String label, long seed, IUModel model, Map<String, Double> overrides) {
+		this(index, label, seed, settings(model), merge(model.getCalibrationOverrides(), overrides));
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	void configure(IUModel model) {
+		for (Map.Entry<String, String> setting : settings.entrySet())
+			set(model, setting.getKey(), setting.getValue());
+		model.setRunSeed(seed);
+		for (Map.Entry<String, Double> override : overrides.entrySet())
+			model.setCalibrationOverride(override.getKey(), override.getValue());
+	}
+
+	// values of the @GUIparameter fields of the model, null ones left out
+	static Map<String, String> settings(IUModel model) {
+		Map<String, String> settings = new TreeMap<String, String>();
+		try {
+			for (Field field : IUModel.class.getDeclaredFields()) {
+				if (!field.isAnnotationPresent(GUIparameter.class))
+					continue;
+				field.setAccessible(true);
+				Object value = field.get(model);
+				if (value != null)
+					settings.put(field.getName(), value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		return settings;
+	}
+
+	// sets the @GUIparameter field name of the model from its string value
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static void set(IUModel model, String name, String value) {
+		try {
+			Field field = IUModel.class.getDeclaredField(name);
+			if (!field.isAnnotationPresent(GUIparameter.class))
+				throw new IllegalArgumentException("Not a setting of the model: " + name);
+			Class<?> type = field.getType();
+			Object parsed;
+			if (type == Integer.class)
+				parsed = Integer.valueOf(value);
+			else if (type == Long.class)
+				parsed = Long.valueOf(value);
+			else if (type == Double.class)
+				parsed = Double.valueOf(value);
+			else if (type == Boolean.class)
+				parsed = Boolean.valueOf(value);
+			else if (type == String.class)
+				parsed = value;
+			else if (type.isEnum())
+				parsed = Enum.valueOf((Class<? extends Enum>) type, value);
+			else
+				throw new IllegalArgumentException("Setting " + name + " of unsupported type " + type.getName());
+			field.setAccessible(true);
+			field.set(model, parsed);
+		} catch (NoSuchFieldException e) {
+			throw new IllegalArgumentException("Unknown setting of the model: " + name, e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Map<String, Double> merge(Map<String, Double> model, Map<String, Double> overrides) {
+		Map<String, Double> merged = new LinkedHashMap<String, Double>(model);
+		merged.putAll(overrides);
+		return merged;
+	}
+
+	String encode() {
+		StringBuilder line = new StringBuilder();
+		line.append(index).append('\t').append(seed).append('\t').append(label).append('\t');
+		for (Map.Entry<String, String> setting : settings.entrySet()) {
+			if (line.charAt(line.length() - 1) != '\t')
+				line.append(',');
+			line.append(setting.getKey()).append('=').append(urlEncode(setting.getValue()));
+		}
+		if (settings.isEmpty())
+			line.append('-');
+		line.append('\t');
+		if (overrides.isEmpty())
+			line.append('-');
+		for (Map.Entry<String, Double> override : overrides.entrySet()) {
+			if (line.charAt(line.length() - 1) != '\t')
+				line.append(',');
+			line.append(override.getKey()).append('=').append(override.getValue());
+		}
+		return line.toString();
+	}
+
+	static RunDescriptor decode(String line) {
+		String[] fields = line.split("\t", -1);
+		if (fields.length != 5)
+			throw new IllegalArgumentException("Malformed run descriptor: " + line);
+		Map<String, String> settings = new TreeMap<String, String>();
+		if (!fields[3].equals("-")) {
+			for (String setting : fields[3].split(",")) {
+				int eq = setting.indexOf('=');
+				settings.put(setting.substring(0, eq), urlDecode(setting.substring(eq + 1)));
+			}
+		}
+		Map<String, Double> overrides = new LinkedHashMap<String, Double>();
+		if (!fields[4].equals("-")) {
+			for (String override : fields[4].split(",")) {
+				int eq = override.indexOf('=');
+				overrides.put(override.substring(0, eq), Double.parseDouble(override.substring(eq + 1)));
+			}
+		}
+		return new RunDescriptor(Integer.parseInt(fields[0]), fields[2], Long.parseLong(fields[1]), settings, overrides);
+	}
+
+	private static String urlEncode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String urlDecode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public String toString() {
+		return index + " (" + label + ")";
+	}
+
+}
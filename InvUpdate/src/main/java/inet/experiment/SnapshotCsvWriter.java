@@ -0,0 +1,40 @@
+package inet.experiment;
+
+import inet.model.FirmSnapshot;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+public class SnapshotCsvWriter implements SnapshotSink {
+
+	// Writes FirmSnapshots to a .csv file: one row per firm and per snapshot, with the time, the id of the firm and the
+	// columns of FirmSnapshot
+
+	private final BufferedWriter out;
+
+	public SnapshotCsvWriter(File file) throws IOException {
+		out = new BufferedWriter(new FileWriter(file), 1 << 16);
+		out.write("time,id");
+		for (String column : FirmSnapshot.COLUMNS)
+			out.write("," + column);
+		out.newLine();
+	}
+
+	public void write(FirmSnapshot snapshot) throws IOException {
+		StringBuilder row = new StringBuilder(256);
+		for (int i = 0; i < snapshot.size(); i++) {
+			row.setLength(0);
+			row.append(snapshot.getTime()).append(',').append(snapshot.getId(i));
+			for (int k = 0; k < FirmSnapshot.COLUMNS.length; k++)
+				row.append(',').append(snapshot.get(k, i));
+			out.append(row).append('\n');
+		}
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+}
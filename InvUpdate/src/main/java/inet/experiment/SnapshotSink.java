@@ -0,0 +1,17 @@
+package inet.experiment;
+
+import inet.model.FirmSnapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface SnapshotSink extends Closeable {
+
+	// Output of the FirmSnapshots of a run (file, database...). The snapshot is only valid during the call: a sink
+	// keeping data beyond it has to copy it. The firms of a large population may come in several parts, consecutive
+	// calls with the same time (see IUCollector.SNAPSHOT_PART), but for a DeltaSnapshotWriter, which diffs whole
+	// snapshots.
+
+	void write(FirmSnapshot snapshot) throws IOException;
+
+}
@@ -0,0 +1,256 @@
+package inet.experiment;
+
+import inet.model.IUModel;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+public class SweepCoordinator {
+
+	// Runs the models of an experiment in a pool of child JVMs (SweepWorker), for sweeps too large for one heap or too
+	// long-running to risk one crash. The runs are queued as RunDescriptors; each child pulls the next run as soon as it
+	// is done with the previous one, s.t. the load balances itself whatever the size of the runs. A child that dies is
+	// restarted, and its run is queued again (up to maxAttempts times). A child that dies before it is ready (e.g. bad
+	// jvmArgs, a missing class path) is restarted after a backoff doubling from startBackoffMillis; after
+	// maxStartFailures of those in a row on one worker the sweep is aborted, the runs still queued recorded as failed.
+	// The output directory and the summary statistics of every run are collected into sweep.csv.
+
+	private final static Logger log = Logger.getLogger(SweepCoordinator.class);
+
+	private final int forks;
+	private final File outputDirectory;
+	private final long baseSeed;
+
+	private List<String> jvmArgs = new ArrayList<String>(); // e.g. -Xmx2g, passed to each child
+	private int maxAttempts = 3; // attempts of a run whose child dies
+	private int maxStartFailures = 3; // children of a worker in a row that die before they are ready
+	private long startBackoffMillis = 1000; // before restarting a child that died before it was ready, doubled each time
+
+	private final BlockingDeque<RunDescriptor> pending = new LinkedBlockingDeque<RunDescriptor>();
+	private CountDownLatch remaining;
+	private PrintWriter results;
+	private volatile String abort; // cause, once the sweep is aborted
+
+	public SweepCoordinator(int forks, File outputDirectory, long baseSeed) {
+		this.forks = forks;
+		this.outputDirectory = outputDirectory;
+		this.baseSeed = baseSeed;
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// runs all the models of the experiment, from its current one until nextModel() returns false, with the given
+	// overrides of the calibration
+	public void run(ReplicationExperiment experiment, Map<String, Double> overrides) throws IOException, InterruptedException {
+
+		int index = 0;
+		do {
+			IUModel model = new IUModel();
+			experiment.configure(model);
+			pending.add(new RunDescriptor(index, experiment.setupRunLabel(), ReplicationExecutor.seed(baseSeed, index), model, overrides));
+			index++;
+		} while (experiment.nextModel());
+		remaining = new CountDownLatch(index);
+
+		outputDirectory.mkdirs();
+		results = new PrintWriter(new BufferedWriter(new FileWriter(new File(outputDirectory, "sweep.csv"))));
+		results.print("index,label,status,output");
+		for (String column : SweepWorker.SUMMARY)
+			results.print("," + column);
+		results.println();
+
+		log.info(index + " runs queued for " + forks + " workers");
+		List<Thread> managers = new ArrayList<Thread>();
+		for (int w = 0; w < forks; w++) {
+			final int worker = w;
+			Thread manager = new Thread("sweep-worker-" + w) {
+				public void run() {
+					manage(worker);
+				}
+			};
+			manager.start();
+			managers.add(manager);
+		}
+		for (Thread manager : managers)
+			manager.join();
+		results.close();
+		if (abort != null)
+			throw new IOException("Sweep aborted: " + abort);
+	}
+
+	// starts a child and feeds it runs until there are none left, restarting it whenever it dies
+	private void manage(int worker) {
+		int startFailures = 0; // in a row
+		while (remaining.getCount() > 0 && abort == null) {
+			Process process = null;
+			RunDescriptor run = null;
+			boolean ready = false;
+			try {
+				process = start();
+				BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(process.getOutputStream()), true);
+
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.equals(SweepWorker.READY)) {
+						ready = true;
+						startFailures = 0;
+						run = next();
+						if (run == null) { // all done
+							out.println(SweepWorker.EXIT);
+							break;
+						}
+						run.attempts++;
+						out.println(SweepWorker.RUN + "\t" + run.encode());
+					} else if (line.startsWith(SweepWorker.DONE) || line.startsWith(SweepWorker.FAILED)) {
+						complete(run, line);
+						run = null;
+					} else {
+						log.warn("Worker " + worker + ": unexpected line " + line);
+					}
+				}
+			} catch (IOException e) {
+				log.error("Worker " + worker + " failed", e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				if (process != null)
+					process.destroy();
+			}
+			if (run != null) // the child died during a run
+				crashed(worker, run);
+			else if (!ready && remaining.getCount() > 0 && abort == null) {
+				startFailures++;
+				if (startFailures >= maxStartFailures) {
+					abort("worker " + worker + " failed to start " + startFailures + " times in a row");
+					return;
+				}
+				long backoff = startBackoffMillis << (startFailures - 1);
+				log.warn("Worker " + worker + " died before it was ready, restarting in " + backoff + " ms");
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private Process start() throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.addAll(jvmArgs);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SweepWorker.class.getName());
+		command.add(outputDirectory.getPath());
+		return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+	}
+
+	// next run to hand out, null once all runs are complete. Waits while runs are in progress elsewhere, as they may
+	// come back to the queue if their child dies
+	private RunDescriptor next() throws InterruptedException {
+		while (remaining.getCount() > 0 && abort == null) {
+			RunDescriptor run = pending.poll(100, TimeUnit.MILLISECONDS);
+			if (run != null)
+				return run;
+		}
+		return null;
+	}
+
+	private void crashed(int worker, RunDescriptor run) {
+		if (run.attempts < maxAttempts && abort == null) {
+			log.warn("Worker " + worker + " died during run " + run + ", run queued again");
+			pending.addFirst(run);
+		} else {
+			log.error("Worker " + worker + " died during run " + run + ", giving up after " + run.attempts + " attempts");
+			complete(run, SweepWorker.FAILED + "\t" + run.index + "\tworker died");
+		}
+	}
+
+	// stops handing out runs: the runs in progress elsewhere complete, the queued ones are recorded as failed
+	private void abort(String cause) {
+		log.error("Sweep aborted: " + cause);
+		abort = cause;
+		RunDescriptor run;
+		while ((run = pending.poll()) != null)
+			complete(run, SweepWorker.FAILED + "\t" + run.index + "\tsweep aborted");
+	}
+
+	private synchronized void complete(RunDescriptor run, String reply) {
+		String[] fields = reply.split("\t", -1);
+		boolean done = fields[0].equals(SweepWorker.DONE);
+		results.print(run.index + ",\"" + run.label + "\"," + fields[0] + ",");
+		results.println(done ? "\"" + fields[2] + "\"," + fields[3] : "\"" + fields[2] + "\"");
+		results.flush();
+		if (done)
+			log.info("Run " + run + " done: " + fields[2]);
+		else
+			log.error("Run " + run + " failed: " + fields[2]);
+		remaining.countDown();
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public int getForks() {
+		return forks;
+	}
+
+	public File getOutputDirectory() {
+		return outputDirectory;
+	}
+
+	public List<String> getJvmArgs() {
+		return jvmArgs;
+	}
+
+	public void setJvmArgs(List<String> jvmArgs) {
+		this.jvmArgs = jvmArgs;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public int getMaxStartFailures() {
+		return maxStartFailures;
+	}
+
+	public void setMaxStartFailures(int maxStartFailures) {
+		this.maxStartFailures = maxStartFailures;
+	}
+
+	public long getStartBackoffMillis() {
+		return startBackoffMillis;
+	}
+
+	public void setStartBackoffMillis(long startBackoffMillis) {
+		this.startBackoffMillis = startBackoffMillis;
+	}
+
+}
@@ -0,0 +1,173 @@
+package inet.experiment;
+
+import inet.model.FirmRandom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SweepDesign {
+
+	// Points of a sweep over named parameters (see ParameterSweep.apply()): either the full-factorial grid of the levels
+	// of each dimension, or a Latin hypercube of a given number of points. A dimension is either a list of levels, or
+	// a range [lower, upper] with a number of levels for the grid (evenly spaced, bounds included); the hypercube
+	// samples ranges continuously and lists by level. The values of an integer parameter (see
+	// ParameterSweep.isInteger(), e.g. dimK) are rounded here, s.t. the point recorded is the one that ran: its grid
+	// levels may repeat, and the hypercube draws each integer of its range with the same probability, so is no longer
+	// strictly Latin in that dimension (several points may share an integer, some integers none). The points only
+	// depend on the dimensions (and on the seed of the hypercube), s.t. a sweep can be resumed from its results.
+
+	private final List<Dimension> dimensions = new ArrayList<Dimension>();
+	private int latinHypercube = 0; // number of points, 0 = full-factorial grid
+	private long seed;
+
+	// ---------------------------------------------------------------------
+	// Dimensions
+	// ---------------------------------------------------------------------
+
+	private static class Dimension {
+
+		final String name;
+		final boolean integer;
+		final double[] levels; // null for a range
+		final double lower, upper;
+		final int rangeLevels;
+
+		Dimension(String name, double[] levels, double lower, double upper, int rangeLevels) {
+			this.name = name;
+			this.integer = ParameterSweep.isInteger(name);
+			if (integer && levels != null)
+				for (int i = 0; i < levels.length; i++)
+					levels[i] = Math.round(levels[i]);
+			this.levels = levels;
+			this.lower = integer ? Math.round(lower) : lower;
+			this.upper = integer ? Math.round(upper) : upper;
+			this.rangeLevels = rangeLevels;
+		}
+
+		int size() {
+			return levels != null ? levels.length : rangeLevels;
+		}
+
+		double level(int i) {
+			if (levels != null)
+				return levels[i];
+			double level = rangeLevels == 1 ? lower : lower + (upper - lower) * i / (rangeLevels - 1);
+			return integer ? Math.round(level) : level;
+		}
+
+		// value at u in [0, 1)
+		double quantile(double u) {
+			if (levels != null)
+				return levels[(int) (u * levels.length)];
+			if (integer)
+				return Math.min(upper, lower + Math.floor((upper - lower + 1) * u));
+			return lower + (upper - lower) * u;
+		}
+	}
+
+	public SweepDesign add(String name, double... levels) {
+		if (levels.length == 0)
+			throw new IllegalArgumentException("No level for " + name);
+		dimensions.add(new Dimension(name, levels.clone(), Double.NaN, Double.NaN, 0));
+		return this;
+	}
+
+	public SweepDesign addRange(String name, double lower, double upper, int levels) {
+		if (levels < 1 || !(lower <= upper))
+			throw new IllegalArgumentException("Invalid range for " + name + ": [" + lower + ", " + upper + "], " + levels + " levels");
+		dimensions.add(new Dimension(name, null, lower, upper, levels));
+		return this;
+	}
+
+	// parses name=v1,v2,... (levels) or name=lower:upper[:levels] (range, 2 levels by default)
+	public SweepDesign add(String spec) {
+		int eq = spec.indexOf('=');
+		if (eq <= 0)
+			throw new IllegalArgumentException(spec + " must be of the form name=v1,v2,... or name=lower:upper[:levels]");
+		String name = spec.substring(0, eq).trim();
+		String values = spec.substring(eq + 1);
+		if (values.contains(":")) {
+			String[] bounds = values.split(":");
+			return addRange(name, Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1]),
+					bounds.length > 2 ? Integer.parseInt(bounds[2]) : 2);
+		}
+		String[] fields = values.split(",");
+		double[] levels = new double[fields.length];
+		for (int i = 0; i < fields.length; i++)
+			levels[i] = Double.parseDouble(fields[i]);
+		return add(name, levels);
+	}
+
+	// ---------------------------------------------------------------------
+	// Points
+	// ---------------------------------------------------------------------
+
+	// one point per row, values in the order of getNames()
+	public List<double[]> points() {
+		return latinHypercube > 0 ? latinHypercubePoints() : gridPoints();
+	}
+
+	// the last dimension varies fastest
+	private List<double[]> gridPoints() {
+		List<double[]> points = new ArrayList<double[]>();
+		int[] index = new int[dimensions.size()];
+		while (true) {
+			double[] point = new double[index.length];
+			for (int d = 0; d < index.length; d++)
+				point[d] = dimensions.get(d).level(index[d]);
+			points.add(point);
+
+			int d = index.length - 1;
+			while (d >= 0 && ++index[d] == dimensions.get(d).size())
+				index[d--] = 0;
+			if (d < 0)
+				return points;
+		}
+	}
+
+	// each dimension is cut into n strata of equal probability, each stratum is used by exactly one point; the strata
+	// are matched across dimensions by independent random permutations
+	private List<double[]> latinHypercubePoints() {
+		int n = latinHypercube;
+		double[][] points = new double[n][dimensions.size()];
+		for (int d = 0; d < dimensions.size(); d++) {
+			FirmRandom rnd = new FirmRandom(seed, d);
+			int[] strata = new int[n];
+			for (int i = 0; i < n; i++)
+				strata[i] = i;
+			for (int i = n - 1; i > 0; i--) { // Fisher-Yates
+				int j = rnd.nextInt(i + 1);
+				int tmp = strata[i];
+				strata[i] = strata[j];
+				strata[j] = tmp;
+			}
+			for (int i = 0; i < n; i++)
+				points[i][d] = dimensions.get(d).quantile((strata[i] + rnd.nextDouble()) / n);
+		}
+		return new ArrayList<double[]>(Arrays.asList(points));
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public String[] getNames() {
+		String[] names = new String[dimensions.size()];
+		for (int d = 0; d < names.length; d++)
+			names[d] = dimensions.get(d).name;
+		return names;
+	}
+
+	public int getLatinHypercube() {
+		return latinHypercube;
+	}
+
+	// samples the given number of points, from the seed, instead of the full grid
+	public SweepDesign setLatinHypercube(int points, long seed) {
+		this.latinHypercube = points;
+		this.seed = seed;
+		return this;
+	}
+
+}
@@ -0,0 +1,81 @@
+package inet.experiment;
+
+import inet.model.FirmSnapshot;
+import inet.model.IUModel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+public class SweepWorker {
+
+	// Child JVM of a SweepCoordinator. Runs one RunDescriptor at a time, without the engine (see ReplicationExecutor),
+	// and talks to the coordinator line by line:
+	//   worker -> coordinator: READY | DONE <tab> index <tab> output directory <tab> summary | FAILED <tab> index <tab> message
+	//   coordinator -> worker: RUN <tab> descriptor | EXIT
+	// stdout carries the protocol only: everything else printed by the worker goes to stderr.
+
+	static final String READY = "READY";
+	static final String RUN = "RUN";
+	static final String DONE = "DONE";
+	static final String FAILED = "FAILED";
+	static final String EXIT = "EXIT";
+
+	// args: output directory
+	public static void main(String[] args) throws Exception {
+
+		PrintStream protocol = System.out;
+		System.setOut(System.err);
+
+		File outputDirectory = new File(args[0]);
+		ReplicationExecutor executor = new ReplicationExecutor(1, outputDirectory, 0L);
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+		protocol.println(READY);
+		protocol.flush();
+		String line;
+		while ((line = in.readLine()) != null && line.startsWith(RUN)) {
+			RunDescriptor run = RunDescriptor.decode(line.substring(RUN.length() + 1));
+			String reply;
+			try {
+				IUModel model = new IUModel();
+				run.configure(model);
+				File directory = executor.outputDirectory(run.index, run.label);
+				long start = System.currentTimeMillis();
+				FirmSnapshot last = executor.replicate(model, directory, run.index);
+				reply = DONE + "\t" + run.index + "\t" + directory.getPath() + "\t"
+						+ summary(last, System.currentTimeMillis() - start);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				reply = FAILED + "\t" + run.index + "\t" + String.valueOf(e).replace('\t', ' ').replace('\n', ' ');
+			}
+			protocol.println(reply);
+			protocol.println(READY);
+			protocol.flush();
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// Summary statistics
+	// ---------------------------------------------------------------------
+
+	static final String[] SUMMARY = { "firms", "mean_cD", "mean_dQ", "mean_dInvE", "mean_nwPrime", "mean_lDebt", "mean_lProd", "ms" };
+	private static final String[] MEANS = { "cD", "dQ", "dInvE", "nwPrime", "lDebt", "lProd" };
+
+	// comma-separated values of SUMMARY for the state of the firms at the end of the run
+	static String summary(FirmSnapshot last, long ms) {
+		StringBuilder summary = new StringBuilder();
+		summary.append(last.size());
+		for (String name : MEANS) {
+			double[] column = last.getColumn(FirmSnapshot.column(name));
+			double sum = 0.;
+			for (int i = 0; i < last.size(); i++)
+				sum += column[i];
+			summary.append(',').append(last.size() > 0 ? sum / last.size() : Double.NaN);
+		}
+		summary.append(',').append(ms);
+		return summary.toString();
+	}
+
+}
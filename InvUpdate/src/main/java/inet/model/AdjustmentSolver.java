@@ -0,0 +1,10 @@
+package inet.model;
+
+// How adjustment1() and adjustment2() cut back the investment plan, see CFirm.cutInvestment(), and find the quantity at 
+// which the payment condition holds, see CFirm.zeroPaymentQuantity()
+public enum AdjustmentSolver {
+	Loop, // one machine at a time, as in resource_allocation.pdf
+	ClosedForm, // number of machines to cut in O(1)
+	Checked, // both, reports any difference beyond rounding (keeps the results of the loop)
+	Bracketed; // root finding on payment(): bisection on the machines, in O(log(machines)), and bracketed Newton on the quantity
+}
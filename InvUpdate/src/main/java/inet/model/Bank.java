@@ -0,0 +1,219 @@
+package inet.model;
+
+// Bank side of the credit market (see CreditMarket). Once the firms have decided (end of the Inv pass), the bank sums
+// their credit demand cD and their net worth nw[0], and lends up to capacity = lambda * total net worth (lambda being
+// the loan-to-value ratio of Parameters). If the demand exceeds the capacity, the credit of the next tick is rationed:
+// the borrowing limit each firm draws in update() is scaled by a share (ProRata), or only granted to the firms whose
+// net worth is at least the threshold s.t. the demand of the firms above it fits in the capacity (PeckingOrder).
+// The demand being that of limits already scaled, the share is updated by capacity / demand from one tick to the next
+// (at most 1), s.t. it settles where the demand meets the capacity rather than alternating with no rationing.
+// Likewise for the threshold: above the capacity, it is raised to where the demand of the firms above it fits (the
+// firms below it demanding nothing already); below the capacity, it is only lowered by the net worth the spare
+// capacity would fund, at the mean demand per unit of net worth of the firms above it, rather than dropped to 0.
+// The sums are computed in parallel over ranges of firms, in fixed point (units of 1 / UNIT): integer sums do not
+// depend on their order, hence the clearing is the same whatever the number of threads. The threshold is found from
+// a histogram of the demand by net worth (BUCKETS buckets up to the largest net worth), filled the same way, and
+// interpolated linearly within its bucket.
+// The last clearing (getState()) is part of a Checkpoint, s.t. a restored run rations the next tick as the original
+// run did.
+
+import java.util.Arrays;
+
+public class Bank {
+
+	static final double UNIT = 1 << 24;
+	static final int BUCKETS = 4096;
+
+	private static final int CD = FirmSnapshot.column("cD");
+	private static final int NW0 = FirmSnapshot.column("nw0");
+
+	private final IUModel model;
+	private final CreditMarket market;
+
+	// last clearing
+	private double time = Double.NaN;
+	private double demand;
+	private double netWorth;
+	private double capacity;
+	private double share = 1.; // of the drawn limits, ProRata
+	private double threshold = 0.; // smallest net worth granted credit, PeckingOrder
+
+	// sums of the ranges
+	private long demandUnits;
+	private long netWorthUnits;
+	private double maxNetWorth;
+	private final long[] histogram = new long[BUCKETS];
+
+	Bank(IUModel model, CreditMarket market) {
+		this.model = model;
+		this.market = market;
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// borrowing limit granted to a firm of net worth nw, which drew the limit drawn; called from update()
+	double limit(double drawn, double nw) {
+		switch(market) {
+		case ProRata:
+			return drawn * share;
+		case PeckingOrder:
+			return nw >= threshold ? drawn : 0.;
+		default:
+			return drawn;
+		}
+	}
+
+	// clears the market of the tick at the given time, once all the firms have decided: sets the rationing of the next
+	// tick
+	void clear(double time) {
+		TickPhaseEvent event = FlightRecording.AVAILABLE ? TickPhaseEvent.begin("BankClearing", time, model.getNumberOfAgents()) : null;
+		this.time = time;
+		demandUnits = 0;
+		netWorthUnits = 0;
+		maxNetWorth = 0.;
+		model.forEachRange(new FirmRangeTask.Pass() {
+			public void run(int from, int to) {
+				long d = 0, w = 0;
+				double max = 0.;
+				for(int i = from; i < to; i++) {
+					double nw = get(i, NW0);
+					d += units(get(i, CD));
+					w += units(nw);
+					max = Math.max(max, nw);
+				}
+				addSums(d, w, max);
+			}
+		});
+		demand = demandUnits / UNIT;
+		netWorth = netWorthUnits / UNIT;
+		capacity = model.getParameters().getLambda() * netWorth;
+
+		if(market == CreditMarket.ProRata && demand > 0.)
+			share = Math.min(1., share * capacity / demand);
+		if(market == CreditMarket.PeckingOrder) {
+			if(demand > capacity)
+				threshold = threshold();
+			else if(threshold > 0.)
+				threshold = lowered();
+		}
+		if(event != null)
+			event.commit();
+	}
+
+	// smallest net worth s.t. the demand of the firms at or above it fits in the capacity
+	private double threshold() {
+		if(!(maxNetWorth > 0.))
+			return Double.POSITIVE_INFINITY; // no net worth, no capacity
+		final double width = maxNetWorth / BUCKETS;
+		Arrays.fill(histogram, 0);
+		model.forEachRange(new FirmRangeTask.Pass() {
+			public void run(int from, int to) {
+				long[] local = new long[BUCKETS];
+				for(int i = from; i < to; i++)
+					local[bucket(get(i, NW0), width)] += units(get(i, CD));
+				addHistogram(local);
+			}
+		});
+
+		double capacityUnits = capacity * UNIT;
+		long served = 0;
+		for(int b = BUCKETS - 1; b >= 0; b--) {
+			if(served + histogram[b] > capacityUnits) { // the threshold is in this bucket
+				double fits = (capacityUnits - served) / histogram[b];
+				return (b + 1 - fits) * width;
+			}
+			served += histogram[b];
+		}
+		return 0.;
+	}
+
+	// threshold lowered by the spare capacity, the firms just below it demanding as much per unit of net worth as the
+	// firms above it
+	private double lowered() {
+		if(!(demand > 0.) || !(maxNetWorth > threshold))
+			return 0.;
+		double density = demand / (maxNetWorth - threshold);
+		return Math.max(0., threshold - (capacity - demand) / density);
+	}
+
+	private static int bucket(double nw, double width) {
+		return Math.max(0, Math.min(BUCKETS - 1, (int) (nw / width)));
+	}
+
+	private static long units(double x) {
+		return Math.round(x * UNIT);
+	}
+
+	// value of the column k of FirmSnapshot.COLUMNS of the firm i
+	private double get(int i, int k) {
+		CFirmPopulation population = model.getPopulation();
+		if(population != null)
+			return population.get(i, k);
+		CFirm f = model.getcFirms().get(i);
+		return k == CD ? f.cD : f.nw[0];
+	}
+
+	// time, demand, net worth, capacity, share and threshold of the last clearing, as saved in a Checkpoint
+	double[] getState() {
+		return new double[] {time, demand, netWorth, capacity, share, threshold};
+	}
+
+	void setState(double[] state) {
+		time = state[0];
+		demand = state[1];
+		netWorth = state[2];
+		capacity = state[3];
+		share = state[4];
+		threshold = state[5];
+	}
+
+	private synchronized void addSums(long d, long w, double max) {
+		demandUnits += d;
+		netWorthUnits += w;
+		maxNetWorth = Math.max(maxNetWorth, max);
+	}
+
+	private synchronized void addHistogram(long[] local) {
+		for(int b = 0; b < BUCKETS; b++)
+			histogram[b] += local[b];
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public CreditMarket getMarket() {
+		return market;
+	}
+
+	// time of the last clearing
+	public double getTime() {
+		return time;
+	}
+
+	// credit demand of the firms at the last clearing
+	public double getDemand() {
+		return demand;
+	}
+
+	public double getNetWorth() {
+		return netWorth;
+	}
+
+	public double getCapacity() {
+		return capacity;
+	}
+
+	// share of the drawn limits granted over the next tick (ProRata)
+	public double getShare() {
+		return share;
+	}
+
+	// smallest net worth granted credit over the next tick (PeckingOrder)
+	public double getThreshold() {
+		return threshold;
+	}
+
+}
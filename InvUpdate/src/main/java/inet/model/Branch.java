@@ -0,0 +1,67 @@
+package inet.model;
+
+// Branches of the allocation decision of a CFirm (invUpdated(), step1(), step2(), adjustment1(), adjustment2()),
+// see resource_allocation.pdf. Used to tag the records of the DecisionTrace.
+// The branches flagged as regimes end the decision: each firm ends up in exactly one regime per tick.
+
+public enum Branch {
+
+	Decision("state before the decision"),
+	Step1("qty and inv. achievable with current resources"),
+	CreditCapped("credit demand above lBar, capped -- should not be possible"),
+	Final("final allocation"),
+
+	// step 2, nwPrime > 0
+	NoLoan("nwPrime > 0, payment w/out loan >= 0", true),
+	LoanForDebt("nwPrime > 0, payment w/ full loan > 0, lDebt in (0, lBar]", true),
+	LoanShort("nwPrime > 0, payment w/ full loan <= 0 --> adj. 1"),
+
+	// step 2, nwPrime = 0
+	FullLoanPaid("full loan used for prod. & inv., payment >= 0", true),
+	FullLoanShort("full loan used for prod. & inv., payment < 0 --> adj. 2"),
+	PartialLoanNoDebt("part of the loan used, payment w/out lDebt > 0", true),
+	PartialLoanDebt("part of the loan used, payment w/ remaining loan > 0", true),
+	PartialLoanShort("part of the loan used, payment w/ remaining loan <= 0 --> adj. 2"),
+
+	// adjustment 1
+	Adj1Step("adj. 1, one machine less"),
+	Adj1InvSucceeded("adj. 1, payment >= 0 after cutting inv.", true),
+	Adj1InvShort("adj. 1, inv. = 0 not sufficient --> adjust qty"),
+	Adj1QhPositive("adj. 1, p - c < c and qH > 0", true),
+	Adj1QhNegative("adj. 1, p - c < c and qH <= 0 --> q = 0", true),
+	Adj1NoWayOut("adj. 1, p - c >= c --> no way out", true),
+
+	// adjustment 2
+	Adj2Step("adj. 2, one machine less, loan re-allocated from lProd to lDebt"),
+	Adj2StepNw("adj. 2, one machine less, funds back to nwPrime"),
+	Adj2InvSucceeded("adj. 2, payment > 0 after cutting inv.", true),
+	Adj2InvShort("adj. 2, inv. = 0 not sufficient --> adjust qty"),
+	Adj2RightOfKink("adj. 2, lProd > 0, p - c < c, solution with lProd > 0", true),
+	Adj2QhPositive("adj. 2, lProd > 0, p - c < c, solution with lProd = 0 and qH > 0", true),
+	Adj2QhNegative("adj. 2, lProd > 0, p - c < c, solution with lProd = 0 and qH <= 0 --> q = 0", true),
+	Adj2LoanNoWayOut("adj. 2, lProd > 0, p - c >= c --> no way out", true),
+	Adj2NwQhPositive("adj. 2, lProd = 0, p - c < c and qH > 0", true),
+	Adj2NwQhNegative("adj. 2, lProd = 0, p - c < c and qH <= 0 --> q = 0", true),
+	Adj2NwNoWayOut("adj. 2, lProd = 0, p - c >= c --> no way out", true);
+
+	private final String description;
+	private final boolean regime;
+
+	private Branch(String description) {
+		this(description, false);
+	}
+
+	private Branch(String description, boolean regime) {
+		this.description = description;
+		this.regime = regime;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public boolean isRegime() {
+		return regime;
+	}
+
+}
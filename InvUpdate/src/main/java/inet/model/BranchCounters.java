@@ -0,0 +1,92 @@
+package inet.model;
+
+// Number of firms whose decision went through each Branch over a tick, and histogram of the number of steps of the
+// investment cut-back of the adjustments (CFirm.adjustmentSteps). A step is one evaluation of the payment, whatever the
+// AdjustmentSolver: machines cut + 1 for the loop, about log2(machines) for the bracketed solver, a few for the closed
+// form; the machines cut are counted by the AdjN*Step branches. Each firm keeps the branches of its last decision as a
+// bitmask (CFirm.path), counted once the decision is over. Filled per range of firms during the Inv pass, by the thread running the range, and merged into the
+// counters of the tick (see IUModel): no counter is shared between threads.
+
+import java.util.Arrays;
+
+public class BranchCounters {
+
+	public static final int STEP_BUCKETS = 12; // 0, 1, 2-3, 4-7, ..., >= 1024 steps
+
+	private static final Branch[] BRANCHES = Branch.values();
+
+	private double time;
+	private long firms;
+	private final long[] branches = new long[BRANCHES.length];
+	private final long[] steps = new long[STEP_BUCKETS];
+	private long totalSteps;
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// the firm, once its decision is over
+	void add(CFirm f) {
+		firms++;
+		for(long path = f.path; path != 0; path &= path - 1)
+			branches[Long.numberOfTrailingZeros(path)]++;
+		steps[bucket(f.adjustmentSteps)]++;
+		totalSteps += f.adjustmentSteps;
+	}
+
+	static int bucket(int steps) {
+		return Math.min(STEP_BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(steps));
+	}
+
+	public void merge(BranchCounters other) {
+		firms += other.firms;
+		for(int b = 0; b < branches.length; b++)
+			branches[b] += other.branches[b];
+		for(int k = 0; k < STEP_BUCKETS; k++)
+			steps[k] += other.steps[k];
+		totalSteps += other.totalSteps;
+	}
+
+	public void reset(double time) {
+		this.time = time;
+		firms = 0;
+		Arrays.fill(branches, 0);
+		Arrays.fill(steps, 0);
+		totalSteps = 0;
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public double getTime() {
+		return time;
+	}
+
+	public long getFirms() {
+		return firms;
+	}
+
+	public long getCount(Branch branch) {
+		return branches[branch.ordinal()];
+	}
+
+	// firms whose cut-back took a number of steps in the bucket k (see getBucketLabel())
+	public long getStepCount(int k) {
+		return steps[k];
+	}
+
+	public long getTotalSteps() {
+		return totalSteps;
+	}
+
+	// smallest number of steps of the bucket k, followed by "+" for the last one
+	public static String getBucketLabel(int k) {
+		int lower = k == 0 ? 0 : 1 << (k - 1);
+		if(k == STEP_BUCKETS - 1)
+			return lower + "+";
+		int upper = k == 0 ? 0 : (1 << k) - 1;
+		return lower == upper ? String.valueOf(lower) : lower + "-" + upper;
+	}
+
+}
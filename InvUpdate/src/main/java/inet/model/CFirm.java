@@ -8,19 +8,22 @@ package inet.model;
 // Assumption here that differs from the general KSM model: 
 // 		1. Tax on profit = 0
 //		2. int. rate on deposit = 0
-// 		3. cost of machine and cost of production are stationary, set equal to 1
+// 		3. cost of machine and cost of production are stationary: Parameters.machinePrice and c0 (1 by default)
 
 import inet.data.*;
 import microsim.data.db.PanelEntityKey;
-import microsim.engine.SimulationEngine;
 import microsim.event.EventListener;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Transient;
 
+import org.apache.log4j.Logger;
+
 @Entity
 public class CFirm implements EventListener {
+
+	private final static Logger log = Logger.getLogger(CFirm.class);
 	
 	// ---------------------------------------------------------------------
 	// Variables
@@ -32,6 +35,18 @@ public class CFirm implements EventListener {
 	private static long idCounter = 1000000;
 	@Transient
 	IUModel model;
+	@Transient
+	Parameters parameters; // calibration of the model
+	@Transient
+	FirmRandom rnd; // own random stream, derived from the seed of the run and the id of the firm
+	
+	static final int SHOCKS = 6; // number of uniform draws per firm and per tick, see applyShocks()
+	static final double CUT_TOLERANCE = 1e-9; // between the closed-form cut-back and the loop, relative to max(1, |x|), see applyCut()
+	private static final ThreadLocal<double[]> draws = new ThreadLocal<double[]>() { // buffer of update(), per thread
+		protected double[] initialValue() {
+			return new double[SHOCKS];
+		}
+	};
 
 	// choice variables 
 	@Transient
@@ -39,7 +54,7 @@ public class CFirm implements EventListener {
 	@Transient
 	double invEStar; // possible level of investment | current resources 
 	@Transient
-	double cInvE; // cost of investment -- in our case, cost of machine = 1 --> cInvE = dInvE / dimension of machines
+	double cInvE; // cost of investment: machinePrice per machine --> cInvE = machinePrice * dInvE / dimension of machines
 	@Transient
 	double cD; // credit demand 
 	@Transient
@@ -71,6 +86,13 @@ public class CFirm implements EventListener {
 	@Transient
 	double lDebt; // remaining part of the loan devoted to debt payment
 	
+	@Transient
+	Branch regime; // regime the last decision ended in, see Branch.isRegime()
+	@Transient
+	long path; // branches of the last decision, one bit per Branch ordinal
+	@Transient
+	int adjustmentSteps; // payments evaluated by the investment cut-back of the last decision, see BranchCounters
+	
 	// ---------------------------------------------------------------------
 	// Constructor
 	// ---------------------------------------------------------------------
@@ -80,13 +102,15 @@ public class CFirm implements EventListener {
 
 	public CFirm(IUModel model, int n) {
 		this.model = model;
+		this.parameters = model.getParameters();
 		key = new PanelEntityKey((long) n);
+		this.rnd = new FirmRandom(model.getRunSeed(), n);
 
-		this.nw = new double[]{SimulationEngine.getRnd().nextDouble() * 10., 1.};
+		this.nw = new double[]{rnd.nextDouble() * 10., 1.};
 
 		this.dInvE = 0.;
 		this.dQ = 0;
-		this.c = 1;
+		this.c = parameters.getC0();
 		this.p = (1 + model.pMarkUp) * c;
 	}
 
@@ -115,68 +139,102 @@ public class CFirm implements EventListener {
 	// ---------------------------------------------------------------------
 
 	public void update(){ // draw random numbers 
-		this.pDem = (double) SimulationEngine.getRnd().nextInt(20);
-		this.dQ = (double) pDem - SimulationEngine.getRnd().nextInt(1);  
-		this.nw[0] = SimulationEngine.getRnd().nextDouble() * 5;
-		this.dInvE = SimulationEngine.getRnd().nextInt(400); 
-		this.dInvE = Math.floor(dInvE / Parameters.getDimK()) * Parameters.getDimK();
-		this.debt = SimulationEngine.getRnd().nextDouble() * 30;
-		this.lBar =  SimulationEngine.getRnd().nextDouble() * 10;
+		update(draws.get());
+	}
+	
+	// update(), the draws going through u (at least SHOCKS long) 
+	void update(double[] u){
+		rnd.nextDoubles(u, 0, SHOCKS);
+		applyShocks(u, 0);
+	}
+	
+	// update() and invUpdated() back to back, the draws going through u (at least SHOCKS long) 
+	void tick(double[] u){
+		rnd.nextDoubles(u, 0, SHOCKS);
+		applyShocks(u, 0);
+		invUpdated();
+	}
+	
+	// sets the state of the period from SHOCKS uniform draws, u[off, off + SHOCKS) 
+	void applyShocks(double[] u, int off){
+		this.pDem = Math.floor(u[off] * 20); // int. in [0, 20)
+		this.dQ = pDem - Math.floor(u[off + 1] * 1); // int. in [0, 1), i.e. no noise for now 
+		this.nw[0] = u[off + 2] * 5;
+		this.dInvE = Math.floor(u[off + 3] * 400); // int. in [0, 400)
+		int dimK = parameters.getDimK();
+		this.dInvE = Math.floor(dInvE / dimK) * dimK;
+		this.debt = u[off + 4] * 30;
+		this.lBar =  u[off + 5] * 10;
+		Bank bank = model.bank;
+		if(bank != null) // rationed by the clearing of the last tick
+			this.lBar = bank.limit(lBar, nw[0]);
 		
 		this.lDebt = 0.;
 		this.lProd = 0;
 	}
 
 	public void invUpdated(){
-		System.out.println("FIRM " + this.getKey().getId());
-
-		cInvE = Math.round(dInvE / Parameters.getDimK()) ;
-
-		 System.out.println("Info: " +
-		 "\n pDem " + pDem +
-		"\n dQ = " + dQ +
-		"\n nw = " + nw[0] +
-		"\n maxCredit = " + lBar + " or " +
-		"\n dInvE = " + dInvE + " which has a cost of " + cInvE +
-		"\n debt = " + debt);
-
-		qStar = dQ;
- 		invEStar = dInvE;
+		if(model.timeDecisions) {
+			timedInvUpdated();
+			return;
+		}
+		decide();
+	}
+	
+	// invUpdated(), recorded as a SlowDecisionEvent if slower than the threshold of the recording 
+	private void timedInvUpdated(){
+		SlowDecisionEvent event = new SlowDecisionEvent();
+		event.begin();
+		decide();
+		event.record(this, model.getTick());
+	}
+	
+	// exact decision
+	void decide(){
+		beginDecision();
+ 		trace(Branch.Decision, qStar);
  		
 		 step1(); // compute the qty and inv achievable with current resources; return q* and i* 
 		 step2(); // check whether they are compatible with debt repayment
 
 		if(cD > lBar){
-			System.out.println("Problem: shoud not be possible");
+			trace(Branch.CreditCapped, dQ); // shoud not be possible
 			this.cD = lBar;
 		}
 
-		System.out.println("The final variables are: " + 
-					"\n production: " + dQ +
-					"\n investment: " + dInvE +
-					"\n remaining wealth " + nwPrime +
-					"\n credit demand is " + cD);
+		trace(Branch.Final, dQ);
 	}
 	
 	// ---------------------------------------------------------------------
 	// Own methods, sub-methods of invUpdated()
 	// ---------------------------------------------------------------------
 
+	void beginDecision(){
+		regime = null;
+		path = 0;
+		adjustmentSteps = 0;
+		cInvE = Math.round(dInvE / parameters.getDimK()) * parameters.getMachinePrice();
+
+		qStar = dQ;
+ 		invEStar = dInvE;
+	}
+
 	public void step1(){ 
 		// compute the Q and I you can achieve with nw and loan at your disposal 		
 		this.nwPrime = nw[0];
 		double lPrime = lBar;
 		
 		// production
-		if(dQ <= nwPrime) { // if internal funds are sufficient, use them
-			nwPrime -= dQ;
-		} else if( dQ <= nwPrime + lPrime) { // if internal funds are not sufficient, then ask
+		double cQ = c * dQ;
+		if(cQ <= nwPrime) { // if internal funds are sufficient, use them
+			nwPrime -= cQ;
+		} else if( cQ <= nwPrime + lPrime) { // if internal funds are not sufficient, then ask
 			// for credit; desired production remains id.but unsure of the credit it will receive
-			lPrime -=  dQ - nwPrime;
+			lPrime -=  cQ - nwPrime;
 			nwPrime = 0.;
 		} else { // need to scale down its production plan to the max it could obtain; still unsure about its actual
 					// credit
-			this.qStar = (nwPrime + lPrime);
+			this.qStar = (nwPrime + lPrime) / c;
 			lPrime = 0.;
 			nwPrime = 0.;
 		}
@@ -188,27 +246,20 @@ public class CFirm implements EventListener {
 			lPrime -= cInvE - nwPrime;
 			nwPrime = 0.;
 		} else {
-			this.invEStar = Math.floor((nwPrime + lPrime)) * Parameters.getDimK();
+			this.invEStar = Math.floor((nwPrime + lPrime) / parameters.getMachinePrice()) * parameters.getDimK();
 			lPrime = 0.;
 			nwPrime = 0.;
 		}
 		
 		this.lProd = lBar - lPrime;
 
-		System.out.println("After Step 1., we have : " +
-		"\n dQ = " + qStar +
-		"\n dInvE = " + invEStar +
-		"\n NW remaining = " + nwPrime +
-		"\n lProd = " + lProd + 
-		"\n credit remaining: " + lPrime);
+		trace(Branch.Step1, qStar);
 	}
 
 	public void step2(){
 		// if nw' --> could reach full prod and inv plan without using the loan at all
 		if(nwPrime > 0){
-			System.out.println("nwPrime is POSITIVE. Checking: "
-					+ "\n nwPrime " + nwPrime
-					+ "\n lProd should be equal to 0" + lProd);
+			// lProd should be equal to 0
 
 			// in the model, underline{r} = 0 ; abstract from it here & tr = 0
 			// paymentWLoan = your expected cash flow at the end of the period, prior to pay the debt, including the loan you keep to pay this debt
@@ -216,64 +267,52 @@ public class CFirm implements EventListener {
 			// paymentWLoan = your expected cash flow at the end of the period, prior to pay the debt, w/out any loan
 			double paymentWOutWLoan = payment(qStar, nwPrime, 0, 0);
 			
-			System.out.println("\t Payment w/out loan: " + paymentWOutWLoan +
-							"\n payment w/ loan: " + paymentWLoan);
-
 			if(paymentWOutWLoan >= 0){// in this case no need to use any loan, your expected liquid assets are above the debt you have to repay
 				
 				this.cD = 0; // to be explicit; 
 				this.dQ = qStar; // should be the same
 				this.dInvE = invEStar; // id.
-				System.out.println("Indeed paymentWOutWLoan > 0");
+				trace(Branch.NoLoan, qStar);
 				
 			} else if(paymentWLoan > 0){ // means that expected liquid asset > due debt if use the entire loan to repay the debt. 
 				// if this is satisfied --> exists lDebt \in (0, lBar], and the closed form of lDebt is give below 
 				
-				this.lDebt = 1 / (1 - Parameters.getRepaymentShare() - IUModel.r) * ( (Parameters.getRepaymentShare() + IUModel.r) * debt - (p-c) * qStar - nwPrime);
-				System.out.println("Indeed paymentWLoan > 0 "
-						+ "\n Checking that indeed lProd = 0: " + lProd
-						+ "\n Chgecking lDebt " + lDebt + " which should in principle <= " + lBar);
+				this.lDebt = 1 / parameters.getOneMinusSMinusR() * ( parameters.getSPlusR() * debt - (p-c) * qStar - nwPrime);
+				// lProd should be 0 and lDebt <= lBar
 				
 				this.dQ = qStar;
 				this.dInvE = invEStar;
 				this.cD = lDebt;
+				trace(Branch.LoanForDebt, qStar);
 				
 			} else { // i.e. remaining net wealth + total loan are not sufficient to pay back debt
 				
-				System.out.println("Couldn't pay with full loan and remaining debt.");
+				trace(Branch.LoanShort, qStar);
 				adjustment1();
 				
 			}
 		} else { // entire nw was used, and therefore also used some (all) of the loan  
-			
-			System.out.println("nwPrime is NIL. Checking all variables: "
-					+"\n qStar " + qStar
-					+ "\n nwPrime " + nwPrime
-					+ "\n lDebt " + lDebt 
-					+ "\n lProd " + lProd + " that should <= lBar " + lBar);
+			// lProd should be <= lBar
 			
 			if(lProd == lBar){ // used all the loan to fund prod & inv. Only case where the firm could have been credit rationed,
 				// that is invEStar =< dInve && qStar =< dQ 
 				
-				System.out.println("Full loan was used for prod and inv.");
 				this.lDebt = 0;
 				
 				// cash flow expected at the end of the period, prior to repay the debt -- obviously lDebt = 0
 				double paymentExpected = payment(qStar, nwPrime, lDebt, lProd);
 				
-				System.out.println("Rev expected: " + paymentExpected);
-				
 				if(paymentExpected >= 0){ // expected liquid assets are sufficient to repay the due debt 
 
-					System.out.println("Indeed paymentExpected > 0");
 					this.lDebt = 0;
 					this.cD = lProd;
 					this.dQ = qStar;
 					this.dInvE = invEStar;
+					trace(Branch.FullLoanPaid, qStar);
 					
 				} else { // expected liquid assets are NOT sufficient to repay the due debt 
 					
-					System.out.println("lDebt = 0 & it is not sufficient to pay debt -- paymentExpected < 0");
+					trace(Branch.FullLoanShort, qStar);
 					adjustment2();
 					
 				}
@@ -281,32 +320,26 @@ public class CFirm implements EventListener {
 				
 				//need first to see if the payment restriction is met without borrowing to pay back the debt, i.e. lDebt = 0
 				if(payment(qStar, nwPrime, 0, lProd) > 0){
-
-					System.out.println("Not all the loan was used. Expectation abour future revenues are sufficient --> no need to borrow actually. "
-							+ "\n and indeed payment without ldebt : " + payment(qStar, nwPrime, 0, lProd));
+					// expectation about future revenues are sufficient --> no need to borrow actually
 					
 					this.lDebt = 0;
 					this.cD = lProd;
 					this.dQ = qStar;
 					this.dInvE = invEStar;
+					trace(Branch.PartialLoanNoDebt, qStar);
 					
 				} else if(payment(qStar, nwPrime, lBar - lProd, lProd) > 0){					
 					// as before, see whether if use the totality of the remaining loan makes that the payment condition will be satisfied;
 					// if yes, then implies that lDebt \in (0, lBar - lProd] ; o.w. have to adjust 
 					
-					System.out.println("OIf use total loan, get paymentWLoan = " + payment(qStar, nwPrime, lBar - lProd, lProd)  + " that is indeed > 0");
-					
-					this.lDebt = 1/(1 - Parameters.getRepaymentShare() - IUModel.r) * ((Parameters.getRepaymentShare() + IUModel.r) * (debt + lProd) - (p - c) * qStar);
-					System.out.println("lDebt is equal to " + lDebt + " and should be < lbar: " + lBar);
-					this.cD = lProd + lDebt; 
-					System.out.println("cD should also be inferior to lBar " + cD + " < " + lBar);
+					this.lDebt = 1/parameters.getOneMinusSMinusR() * (parameters.getSPlusR() * (debt + lProd) - (p - c) * qStar);
+					this.cD = lProd + lDebt; // should be < lBar
 					this.dQ = qStar; // in this case should be equal 
 					this.dInvE = invEStar; // id.
-					System.out.println("Checking that payment ---> 0: " + payment(dQ, nwPrime, lDebt, lProd));
+					trace(Branch.PartialLoanDebt, dQ); // payment ---> 0
 				} else { // payment condition does not hold with full loan used -- obv. will not hold with lower loan 
 					
-					System.out.println("The remaining loan was not sufficient");
-					
+					trace(Branch.PartialLoanShort, qStar);
 					adjustment2();
 					
 				}
@@ -320,57 +353,41 @@ public class CFirm implements EventListener {
 	
 	public void adjustment1(){
 		
-		System.out.println("Reach the phase of adjustment 1");
 		// expected cash flow is mono. increasing in lDebt --> set lDebt = max loan
 		this.lDebt = lBar;
 		this.lProd = 0;
-		System.out.println("Payment condition prior to start the adj. is " + payment(qStar, nwPrime, lDebt, lProd));
 		
 		// Incrementally reduce investment that was funded through internal fund --> use the money saved from the inv. to increase the deposit at the bank
-		while(payment(qStar, nwPrime, lDebt, lProd) < 0 && invEStar > 0){ 
-			invEStar -= Parameters.getDimK(); // reduce inv. by one machine 
-			nwPrime += 1; // because the cost  of a machine = 1
-			
-			System.out.println("Checking adjust. process: " +
-						"\n invEStar; " + invEStar +
-						"\n nwPrime: " + nwPrime +
-						"\n payment: " + payment(qStar, nwPrime, lDebt, lProd));
-			
-			if(payment(qStar, nwPrime, lDebt, lProd) >= 0){ // if yes, then updates the variables with their final values and the adjustment process stops 
+		int machines = cutInvestment(false);
+		if(machines > 0 && payment(qStar, nwPrime, lDebt, lProd) >= 0){ // if yes, then updates the variables with their final values and the adjustment process stops 
 				
-				this.cD = lDebt;
-				this.dInvE = invEStar;
-				this.dQ = qStar;
+			this.cD = lDebt;
+			this.dInvE = invEStar;
+			this.dQ = qStar;
+			trace(Branch.Adj1InvSucceeded, qStar);
 				
-				System.out.println("Adjustment succeeded: payment > 0");
-				
-			}
 		}
 		
 		//if payment is still negative, have to continue the adjustment
 		if(payment(qStar, nwPrime, lDebt, lProd) < 0){
 			
-			System.out.println("Inv. adjustment was not sufficient to make payment > 0");
+			trace(Branch.Adj1InvShort, qStar);
 			this.dInvE = 0;
 			
-			if(p - c < 1){ // see the pdf for a complete explanation; basically: return to savings > return to production 
+			if(p - c < c){ // see the pdf for a complete explanation; basically: return to savings > return to production 
 				// --> reducing production & savings more will bring the firm closer to its payment restriction. 
 				// By the mean value theorem, exist q* s.t. payment condition is satisfied (here qH). Only
 				// question is whether qH > 0
 				
 				// level of quantity for which E(cf + l) = 0
-				double qH = 1 / (p - c - 1) * ((Parameters.getRepaymentShare() + IUModel.r) * debt - nw[0] - (1 - Parameters.getRepaymentShare() - IUModel.r) * lDebt);
-				
-				System.out.println("cf + l is decreasing in q --> exist qH*. Yet, qH is : " + qH);
+				double qH = zeroPaymentQuantity(lDebt, false);
 				
 				if(qH > 0){ // if positive, then means that the adjustment is possible 
 					
 					this.dQ = qH;
-					this.nwPrime = nw[0] - dQ; //TODO: change with cost of production different than one
+					this.nwPrime = nw[0] - c * dQ;
 					this.cD = lDebt;
-					
-					System.out.println("Indeed qH > 0  --> nwPrime = " + nwPrime +
-							"\n Checking that indeed payment > 0: " + payment(dQ, nwPrime, lDebt, lProd));
+					trace(Branch.Adj1QhPositive, dQ); // payment should be > 0
 					
 				} else {
 					
@@ -381,22 +398,18 @@ public class CFirm implements EventListener {
 					this.nwPrime = nw[0];
 					this.lDebt = 0; // this will shift down the curve but do not take riskier position // not leverage more (ass) 
 					this.cD = 0;
-					
-					System.out.println("Indeed qH < 0 --> nwPrime = nw[0] = " + nw[0] +
-							"\n Checking that indeed payment < 0: " + payment(dQ, nwPrime, lDebt, lProd));
+					trace(Branch.Adj1QhNegative, dQ); // payment should be < 0
 					
 				}
 			} else { // here cf + l is increasing in the production, s.t. if cf + l < 0 at the optimal quantity, 
 				// there is now to adjust -- increasing production will not increase revenues because could not sell
 				// this production (sales are bounded above by demand). If try to min the losses, then have to set dQ = qStar;
 				
-				this.dQ = Math.min(dQ, nw[0]); // id.
+				this.dQ = Math.min(dQ, nw[0] / c); // id.
 				this.lDebt = 0; // this will shift down the curve but cannot leverage more (ass) 
 				this.cD = 0;
-				this.nwPrime = nw[0] - qStar;
-				
-				System.out.println("cf + l is increasing in q --> no way out, hence dQ = " + dQ + " and nwPrime " + nwPrime + 
-						"\n checking that indeed payment < 0: " + payment(dQ, nwPrime, lDebt, lProd));
+				this.nwPrime = nw[0] - c * qStar;
+				trace(Branch.Adj1NoWayOut, dQ); // payment should be < 0
 			
 			}
 		}
@@ -408,69 +421,29 @@ public class CFirm implements EventListener {
 		if(lDebt < 0) // should never be the case
 			this.lDebt = 0;
 		
-		// payment equation
-		System.out.println("Reach the adj2. Prior to start the adj, payment condition is given by " + payment(qStar, nwPrime, lDebt, lProd));
-		
-		//ass: 1 >= Parameters.getRepaymentShare() + IUModel.r
-		while(payment(qStar, nwPrime, lDebt, lProd) < 0 && invEStar > 0){ // reduces incrementally inv. up to either --> 0 or the payment condition is satisfied 
-			if(lProd > 0){
+		//ass: 1 >= repaymentShare + r
+		// reduces incrementally inv. up to either --> 0 or the payment condition is satisfied 
+		int machines = cutInvestment(true);
+		//re-compute the payment equation. If positive --> update the variables with their final values & then stop
+		if(machines > 0 && payment(qStar, nwPrime, lDebt, lProd) > 0){
+				
+			this.dQ = qStar;
+			this.dInvE = invEStar;
+			this.cD = lDebt + lProd;
+			trace(Branch.Adj2InvSucceeded, qStar);
+			// nwPrime already be defined earlier 
 				
-				System.out.println("Inv. so far funded through loan --> re-allocate loan from lProd to lDebt");
-				// re-allocate from lProd to lDebt -- because inv. funded with loan
-				
-				if(lProd > 1){ // need to take this into account because inv. could be partially fund with loan & liquid asset 
-					// here means that this machine was fully fund with loan
-					this.lProd -= 1;
-					
-					this.lDebt += 1;
-				} else { // marginal case; some reduction --> increase lDebt && the rest : increase in nwPrime
-					// hence here, case where lProd reaches 0 before inv
-					
-					// part of the machine not funded with loan but with nw
-					double savings = 1 - lProd;
-					this.nwPrime += savings;
-					this.lProd = 0;
-					this.lDebt = lBar;
-					
-				}
-			} else {
-				// re-allocate from inv to nwPrime -- because inv. funded with nw
-				System.out.println("Inv. funded through internal funds --> re-allocate lthose funds to savings");
-				
-				this.nwPrime +=1;
-				
-			}
-			this.invEStar -= Parameters.getDimK();
-			
-			System.out.println("Checking adjust. process: " +
-					"\n invEStar; " + invEStar +
-					"\n lProd " + lProd +
-					"\n lDebt " + lDebt +
-					"\n nwPrime: " + nwPrime +
-					"\n payment: " + payment(qStar, nwPrime, lDebt, lProd));
-			
-			//re-compute the payment equation. If positive --> update the variables with their final values & then stop
-			if(payment(qStar, nwPrime, lDebt, lProd) > 0){
-				
-				this.dQ = qStar;
-				this.dInvE = invEStar;
-				this.cD = lDebt + lProd;
-				
-				System.out.println("Adjustment succeeded: payment > 0");
-				// nwPrime already be defined earlier 
-				
-			}
-		} 
+		}
 		
 		// if payment are still negative, then needs to adjust further through quantities
 		if(payment(qStar, nwPrime, lDebt, lProd) < 0){
 			
 			this.dInvE = 0;
-			System.out.println("Adjustment through inv. not sufficient --> adjust through qty as well");
+			trace(Branch.Adj2InvShort, qStar);
 			
 			if(lProd > 0){ // if lProd > 0 --> some part of the prod was also founded through loan
 				
-				if(p - c < 1){ 
+				if(p - c < c){ 
 					// as for adjustment 1(), means that cf + l is (mono) decreasing in quantity --> mean value theorem
 					// imply that there exist qH s.t. cf + l = 0, but qH could be > 0 or < 0
 
@@ -484,35 +457,25 @@ public class CFirm implements EventListener {
 					this.lProd = 0;
 					
 					// No loan available --> by definition the corresponding level of qty = either optimal one (dQ) or the one
-					// that the firm is able to fund (nw[0] -- with cost of production = 1). In theory = nw[0] -- because lProd > 0 initially
-					double qH = Math.min(dQ, nw[0]); // should change with cost different than one
-					nwPrime = nw[0] - qH; // should be equal to 0
-					
-					System.out.println("Payment condition is decreasing in dQ --> reduce it. Try at point where the slope is changing: "
-							+ "\n qH is : " + qH 
-							+ "\n and payment: " + payment(qH, nwPrime, lDebt, lProd));
+					// that the firm is able to fund (nw[0] / c). In theory = nw[0] / c -- because lProd > 0 initially
+					double qH = Math.min(dQ, nw[0] / c);
+					nwPrime = nw[0] - c * qH; // should be equal to 0
 					
 					if(payment(qH, nwPrime, lDebt, lProd) >=0){ 
 						
 						// then implies that the allocation solution is to the right of lProd = 0
 						// closed form solution, dQ : cf + l = 0
-						this.dQ = 1 / (p - c - 1) * ((Parameters.getRepaymentShare() + IUModel.r) * debt - nw[0] - lBar * ( 1 - Parameters.getRepaymentShare() - IUModel.r));
-						// this dQ should be positive 
+						this.dQ = zeroPaymentQuantity(lBar, true);
+						// this dQ should be positive, and <= original dQ 
 
-						this.lProd = Math.max(0, dQ - nw[0]);
+						this.lProd = Math.max(0, c * dQ - nw[0]);
 						// should be positive
 						this.lDebt = lBar - lProd;
 						this.cD = lBar; // because was just pure re-allocation between lProd and lDebt 
 
-						this.nwPrime = Math.max(0, nw[0] - dQ);
+						this.nwPrime = Math.max(0, nw[0] - c * dQ);
 						//nwPrime should be equal to 0
-						
-						System.out.println("Indeed payment > 0 --> have to find close form solution for q*. We have: " +
-								"\n qH = " + dQ + "should be <= original dQ" +
-								"\n corres. lProd: " + lProd +
-								"\n corres. lDebt: " + lDebt +
-								"\n corres. nwPrime (should be 0) " + nwPrime +
-								"\n and payment condition should be > 0 = " + payment(dQ, nwPrime, lDebt, lProd));
+						trace(Branch.Adj2RightOfKink, dQ); // payment should be > 0
 				
 					} else { // means that the solution is to the left of this point; but then not sure whether qH > 0 or qH < 0
 						
@@ -520,24 +483,22 @@ public class CFirm implements EventListener {
 						this.lDebt = lBar;
 						// closed form for qH : cf + l = 0
 						
-						qH = 1 / (p - c - 1) * ((Parameters.getRepaymentShare() + IUModel.r) * debt - nw[0] - lDebt * (1 - Parameters.getRepaymentShare() - IUModel.r));
+						qH = zeroPaymentQuantity(lDebt, false);
 					
-						System.out.println("Solution is actually to the left of this point. Optimal production: " + qH);
 						if(qH > 0){ // check whether indeed qH is positive 
 						
 							this.dQ = qH;
-							this.nwPrime = Math.max(0, nw[0] - dQ);
+							this.nwPrime = Math.max(0, nw[0] - c * dQ);
 							this.cD = lDebt;
+							trace(Branch.Adj2QhPositive, dQ); // payment should be = 0
 						
-							System.out.println("Indeed qH > 0 --> payment should be = 0 : " + payment(dQ, nwPrime, lDebt, lProd));
 						} else { // if not possible, means that cannot reach the point where cf + l = 0
 							// has to opt out for the safest strategy: min its loss and cf + l is (mono) decreasing in dQ --> dQ = 0
 							
 							this.dQ = 0;
 							this.nwPrime = nw[0]; // all liquid assets are left in the deposit (yield higher return than production)
 							this.cD = this.lDebt = this.lProd = 0;
-							
-							System.out.println("qH < 0 --> payment should be < 0 : " + payment(dQ, nwPrime, lDebt, lProd));
+							trace(Branch.Adj2QhNegative, dQ); // payment should be < 0
 						
 						}
 					}
@@ -546,33 +507,29 @@ public class CFirm implements EventListener {
 					//TODO: change when put it into the general model (could be that cf + l is not mono increasing in dQ)
 					
 					//therefore here no way to adjust, cf + l is mono increasing in dQ : want to min the loss --> dQ = optimal plan
-					this.dQ = Math.min(dQ, nw[0]);
+					this.dQ = Math.min(dQ, nw[0] / c);
 					this.cD = this.lProd = this.lDebt = 0;
-					this.nwPrime = Math.max(0, nw[0] - dQ); // should be equal to 0, production yields higher return than savings 
-					
-					System.out.println("cf + l is increasing in dQ --> no way to adjust. Payment < 0 : " + payment(dQ, nwPrime, lDebt, lProd));
+					this.nwPrime = Math.max(0, nw[0] - c * dQ); // should be equal to 0, production yields higher return than savings 
+					trace(Branch.Adj2LoanNoWayOut, dQ); // payment should be < 0
 				
 				}
 			} else { // All the prod. was funded through liquid asset --> id. to loop 1, second bit 
 				
 				this.lDebt = lBar;
-				if(p - c < 1){ // see the pdf for a complete explanation; basically: return to savings > return to production 
+				if(p - c < c){ // see the pdf for a complete explanation; basically: return to savings > return to production 
 					// --> reducing production & savings more will bring the firm closer to its payment restriction. 
 					// By the mean value theorem, exist q* s.t. payment condition is satisfied (here qH). Only
 					// question is whether qH > 0
 					
 					// level of quantity for which E(cf + l) = 0
-					double qH = 1 / (p - c - 1) * ((Parameters.getRepaymentShare() + IUModel.r) * debt - nw[0] - (1 - Parameters.getRepaymentShare() - IUModel.r) * lDebt);
-					System.out.println("cf + l is decreasing in q --> exist qH*. Yet, qH is : " + qH);
+					double qH = zeroPaymentQuantity(lDebt, false);
 					
 					if(qH > 0){ // if positive, then means that the adjustment is possible 
 						
 						this.dQ = qH;
-						this.nwPrime = nw[0] - dQ; //TODO: change with cost of production different than one
+						this.nwPrime = nw[0] - c * dQ;
 						this.cD = lDebt;
-						
-						System.out.println("Indeed qH > 0  --> nwPrime = " + nwPrime +
-								"\n Checking that indeed payment > 0: " + payment(dQ, nwPrime, lDebt, lProd));
+						trace(Branch.Adj2NwQhPositive, dQ); // payment should be > 0
 					
 					} else {
 						// cannot adjust. Ass: try to min the losses (e.g. o.w. have to incur more fees, or judiciary costs etc.)
@@ -582,31 +539,272 @@ public class CFirm implements EventListener {
 						this.nwPrime = nw[0];
 						this.lDebt = 0; // this will shift down the curve but do not take riskier position // not leverage more (ass) 
 						this.cD = 0;
-						
-						System.out.println("Indeed qH < 0 --> nwPrime = nw[0] = " + nw[0] +
-								"\n Checking that indeed payment < 0: " + payment(dQ, nwPrime, lDebt, lProd));
+						trace(Branch.Adj2NwQhNegative, dQ); // payment should be < 0
 					
 					}
 				} else { // here cf + l is increasing in the production, s.t. if cf + l < 0 at the optimal quantity, 
 					// there is now to adjust -- increasing production will not increase revenues because could not sell
 					// this production (sales are bounded above by demand). If try to min the losses, then have to set dQ = qStar;
-					this.dQ = Math.min(dQ, nw[0]); // id.
+					this.dQ = Math.min(dQ, nw[0] / c); // id.
 					this.lDebt = 0; // this will shift down the curve but cannot leverage more (ass) 
 					this.cD = 0;
-					this.nwPrime = nw[0] - qStar;
-					
-					System.out.println("cf + l is increasing in q --> no way out, hence dQ = " + dQ + " and nwPrime " + nwPrime + 
-							"\n checking that indeed payment < 0: " + payment(dQ, nwPrime, lDebt, lProd));
+					this.nwPrime = nw[0] - c * qStar;
+					trace(Branch.Adj2NwNoWayOut, dQ); // payment should be < 0
 				
 				}
 			}
 		}
 	}
 	
+	// ---------------------------------------------------------------------
+	// Own methods, investment cut-back of the adjustment processes
+	// ---------------------------------------------------------------------
+	
+	// reduces inv. one machine at a time until payment >= 0 or inv. = 0, as selected by the model's AdjustmentSolver.
+	// viaLoan = adj. 2: the machines funded through loan are cut first, the loan being re-allocated from lProd to lDebt
+	// Returns the number of machines cut. 
+	int cutInvestment(boolean viaLoan){
+		switch(model.adjustmentSolver) {
+		case ClosedForm:
+			return cutInvestmentClosedForm(viaLoan);
+		case Checked:
+			return cutInvestmentChecked(viaLoan);
+		case Bracketed:
+			return cutInvestmentBracketed(viaLoan);
+		default:
+			return cutInvestmentLoop(viaLoan);
+		}
+	}
+	
+	int cutInvestmentLoop(boolean viaLoan){
+		double price = parameters.getMachinePrice();
+		int machines = 0;
+		while(cutPayment() < 0 && invEStar > 0){
+			if(!viaLoan){ 
+				invEStar -= parameters.getDimK(); // reduce inv. by one machine 
+				nwPrime += price; // the cost of a machine
+				trace(Branch.Adj1Step, qStar);
+			} else if(lProd > 0){
+				// Inv. so far funded through loan --> re-allocate loan from lProd to lDebt
+				
+				if(lProd > price){ // need to take this into account because inv. could be partially fund with loan & liquid asset 
+					// here means that this machine was fully fund with loan
+					this.lProd -= price;
+					
+					this.lDebt += price;
+				} else { // marginal case; some reduction --> increase lDebt && the rest : increase in nwPrime
+					// hence here, case where lProd reaches 0 before inv
+					
+					// part of the machine not funded with loan but with nw
+					double savings = price - lProd;
+					this.nwPrime += savings;
+					this.lProd = 0;
+					this.lDebt = lBar;
+					
+				}
+				this.invEStar -= parameters.getDimK();
+				trace(Branch.Adj2Step, qStar);
+			} else {
+				// re-allocate from inv to nwPrime -- because inv. funded with nw
+				this.nwPrime += price;
+				this.invEStar -= parameters.getDimK();
+				trace(Branch.Adj2StepNw, qStar);
+			}
+			machines++;
+		}
+		return machines;
+	}
+	
+	// payment() of the current state during the cut-back, counted in adjustmentSteps: whatever the solver, a step is one
+	// evaluation of the payment (see BranchCounters)
+	double cutPayment(){
+		adjustmentSteps++;
+		return payment(qStar, nwPrime, lDebt, lProd);
+	}
+	
+	// payment() is linear in nwPrime, lDebt and lProd: whichever way a machine was funded, cutting it raises the payment by 
+	// its price m (back to nwPrime, or moved from lProd to lDebt: m (1 - rs - r) + m (rs + r) = m). Hence the loop stops 
+	// after ceil(-payment / m) machines, or when there is no machine left. The neighbours of this count are checked with 
+	// payment() itself, s.t. rounding cannot put the stop on the other side of the loop's. 
+	int cutInvestmentClosedForm(boolean viaLoan){
+		double payment0 = cutPayment();
+		if(!(payment0 < 0) || invEStar <= 0)
+			return 0;
+		
+		int max = (int) Math.ceil(invEStar / parameters.getDimK()); // machines in the plan
+		double nwPrime0 = nwPrime, invEStar0 = invEStar, lProd0 = lProd, lDebt0 = lDebt;
+		
+		int machines = (int) Math.min(max, Math.max(1, Math.ceil(-payment0 / parameters.getMachinePrice())));
+		while(machines > 1 && paymentAfterCut(viaLoan, machines - 1, nwPrime0, invEStar0, lProd0, lDebt0) >= 0)
+			machines--;
+		while(machines < max && paymentAfterCut(viaLoan, machines, nwPrime0, invEStar0, lProd0, lDebt0) < 0)
+			machines++;
+		
+		applyCut(viaLoan, machines, nwPrime0, invEStar0, lProd0, lDebt0);
+		trace(viaLoan ? Branch.Adj2Step : Branch.Adj1Step, qStar);
+		return machines;
+	}
+	
+	// bisection on the number of machines cut: cutting a machine never lowers the payment, whatever its price and the way 
+	// it was funded, hence the loop's stop (the first count at which payment >= 0, or all the machines) is found with 
+	// O(log(machines)) payments, without relying on the payment being linear
+	int cutInvestmentBracketed(boolean viaLoan){
+		double payment0 = cutPayment();
+		if(!(payment0 < 0) || invEStar <= 0)
+			return 0;
+		
+		int max = (int) Math.ceil(invEStar / parameters.getDimK()); // machines in the plan
+		double nwPrime0 = nwPrime, invEStar0 = invEStar, lProd0 = lProd, lDebt0 = lDebt;
+		
+		int lo = 0, hi = max; // payment < 0 after lo machines cut; >= 0 after hi, unless hi = max
+		while(hi - lo > 1){
+			int mid = (lo + hi) >>> 1;
+			if(paymentAfterCut(viaLoan, mid, nwPrime0, invEStar0, lProd0, lDebt0) >= 0)
+				hi = mid;
+			else
+				lo = mid;
+		}
+		
+		applyCut(viaLoan, hi, nwPrime0, invEStar0, lProd0, lDebt0);
+		trace(viaLoan ? Branch.Adj2Step : Branch.Adj1Step, qStar);
+		return hi;
+	}
+	
+	// sets the state reached by the loop after cutting the given number of machines from the initial state (nwPrime0, ...).
+	// One multiplication per variable where the loop adds the price once per machine: the state may differ from the loop's
+	// in the last bits, within CUT_TOLERANCE. The number of machines is the loop's, unless the payment is within rounding 
+	// of 0 at the stop
+	void applyCut(boolean viaLoan, int machines, double nwPrime0, double invEStar0, double lProd0, double lDebt0){
+		double price = parameters.getMachinePrice();
+		this.invEStar = invEStar0 - machines * parameters.getDimK();
+		if(!viaLoan){
+			this.nwPrime = nwPrime0 + machines * price;
+			return;
+		}
+		
+		// machines fully funded through loan: cut while lProd > price
+		int fullyFunded = lProd0 > price ? (int) Math.ceil((lProd0 - price) / price) : 0;
+		int viaLProd = Math.min(machines, fullyFunded);
+		this.lProd = lProd0 - viaLProd * price;
+		this.lDebt = lDebt0 + viaLProd * price;
+		this.nwPrime = nwPrime0;
+		
+		int left = machines - viaLProd;
+		if(left > 0 && lProd > 0){ // marginal machine, partly funded with nw
+			this.nwPrime += price - lProd;
+			this.lProd = 0;
+			this.lDebt = lBar;
+			left--;
+		}
+		this.nwPrime += left * price; // machines funded with nw
+	}
+	
+	double paymentAfterCut(boolean viaLoan, int machines, double nwPrime0, double invEStar0, double lProd0, double lDebt0){
+		adjustmentSteps++;
+		applyCut(viaLoan, machines, nwPrime0, invEStar0, lProd0, lDebt0);
+		return payment(qStar, nwPrime, lDebt, lProd);
+	}
+	
+	// differential check: runs the closed form, then the loop from the same state, and reports any difference beyond 
+	// rounding (CUT_TOLERANCE, see applyCut()). The loop's results are kept.
+	int cutInvestmentChecked(boolean viaLoan){
+		double nwPrime0 = nwPrime, invEStar0 = invEStar, lProd0 = lProd, lDebt0 = lDebt;
+		int steps0 = adjustmentSteps;
+		int machines = cutInvestmentClosedForm(viaLoan);
+		double nwPrimeCF = nwPrime, invEStarCF = invEStar, lProdCF = lProd, lDebtCF = lDebt;
+		
+		this.nwPrime = nwPrime0; this.invEStar = invEStar0; this.lProd = lProd0; this.lDebt = lDebt0;
+		this.adjustmentSteps = steps0; // the steps of the loop only
+		int machinesLoop = cutInvestmentLoop(viaLoan);
+		
+		if(machines != machinesLoop || !withinCutTolerance(invEStarCF, invEStar) || !withinCutTolerance(nwPrimeCF, nwPrime) 
+				|| !withinCutTolerance(lProdCF, lProd) || !withinCutTolerance(lDebtCF, lDebt))
+			log.warn("Firm " + key.getId() + ", closed-form cut-back differs from the loop (" + (viaLoan ? "adj. 2" : "adj. 1") + "): " +
+					"machines " + machines + " vs " + machinesLoop +
+					", invEStar " + invEStarCF + " vs " + invEStar +
+					", nwPrime " + nwPrimeCF + " vs " + nwPrime +
+					", lProd " + lProdCF + " vs " + lProd +
+					", lDebt " + lDebtCF + " vs " + lDebt);
+		return machinesLoop;
+	}
+	
+	static boolean withinCutTolerance(double x, double y){
+		return Math.abs(x - y) <= CUT_TOLERANCE * Math.max(1., Math.max(Math.abs(x), Math.abs(y)));
+	}
+	
+	// ---------------------------------------------------------------------
+	// Own methods, quantity of the adjustment processes
+	// ---------------------------------------------------------------------
+	
+	// quantity qH s.t. E(cf + l) = 0 once the investment is cut to 0, the production being funded with nw[0], then (viaLoan) 
+	// with loan moved from lDebt (lD at q = 0) to lProd. For p - c < c, i.e. payment decreasing in q; qH <= 0 if there is no 
+	// positive solution. In closed form (the payment is linear in q, of slope p - c - c on both sides of the kink), unless 
+	// the model's AdjustmentSolver is Bracketed
+	double zeroPaymentQuantity(double lD, boolean viaLoan){
+		if(model.adjustmentSolver == AdjustmentSolver.Bracketed)
+			return bracketedQuantity(lD, viaLoan);
+		return 1 / (p - c - c) * (parameters.getSPlusR() * debt - nw[0] - parameters.getOneMinusSMinusR() * lD);
+	}
+	
+	// root of paymentOfQuantity() by Newton steps kept within a bracket [lo, hi] (payment(lo) > 0 >= payment(hi)), bisecting 
+	// whenever a step leaves it, to a precision of Parameters.tolerance (10^-speedConv) relative to the bracket. Returns 0 if 
+	// the payment is not positive at q = 0 
+	double bracketedQuantity(double lD, boolean viaLoan){
+		double lo = 0., fLo = paymentOfQuantity(0., lD, viaLoan);
+		if(!(fLo > 0))
+			return 0.;
+		double hi = Math.max(1., qStar);
+		for(int k = 0; k < 64 && paymentOfQuantity(hi, lD, viaLoan) > 0; k++) { // expands the bracket, hi = qStar in general
+			lo = hi;
+			hi *= 2;
+		}
+		fLo = paymentOfQuantity(lo, lD, viaLoan);
+		
+		double slope = p - c - c; // d payment / dq, one unit of production costing c of nwPrime or of lDebt 
+		double tolerance = parameters.getTolerance() * Math.max(1., hi);
+		double q = lo - fLo / slope;
+		while(hi - lo > tolerance){
+			if(!(q > lo && q < hi)) // Newton step out of the bracket
+				q = 0.5 * (lo + hi);
+			double f = paymentOfQuantity(q, lD, viaLoan);
+			if(f == 0)
+				return q;
+			if(f > 0)
+				lo = q;
+			else
+				hi = q;
+			double step = -f / slope;
+			if(Math.abs(step) <= tolerance)
+				return q + step;
+			q += step;
+		}
+		return lo;
+	}
+	
+	// payment when producing q with no investment: funded with nw[0], then (viaLoan) with loan moved from lDebt (lD at q = 0) 
+	// to lProd
+	double paymentOfQuantity(double q, double lD, boolean viaLoan){
+		double cost = c * q;
+		if(!viaLoan || cost <= nw[0])
+			return payment(q, nw[0] - cost, lD, 0);
+		return payment(q, 0, lD - (cost - nw[0]), cost - nw[0]);
+	}
+	
+	// called on every branch of the decision: keeps track of the regime, and records the branch taken, with the state of 
+	// the firm, if the decisions of this firm are traced 
+	private void trace(Branch branch, double q){
+		if(branch.isRegime())
+			regime = branch;
+		path |= 1L << branch.ordinal();
+		DecisionTrace trace = model.trace;
+		if(trace != null && trace.accepts(key.getId()))
+			trace.record(key.getId(), branch, q, invEStar, nwPrime, lProd, lDebt, payment(q, nwPrime, lDebt, lProd));
+	}
+	
 	// metho that compute the payment condition as a function of the loan, production & liquid asset remaining 
 	public double payment(double q, double nw1, double lD, double lP){
 		
-		double payment = (p-c)*q + lD * (1 - Parameters.getRepaymentShare() - IUModel.r) + nw1 - (Parameters.getRepaymentShare() + IUModel.r) * (debt + lP);
+		double payment = (p-c)*q + lD * parameters.getOneMinusSMinusR() + nw1 - parameters.getSPlusR() * (debt + lP);
 		return payment;
 		
 	}
@@ -618,4 +816,25 @@ public class CFirm implements EventListener {
 		return key;
 	}
 
+	static long getIdCounter() {
+		return idCounter;
+	}
+
+	static void setIdCounter(long idCounter) {
+		CFirm.idCounter = idCounter;
+	}
+
+	public Branch getRegime() {
+		return regime;
+	}
+
+	// whether the last decision went through the branch
+	public boolean wentThrough(Branch branch) {
+		return (path & 1L << branch.ordinal()) != 0;
+	}
+
+	public int getAdjustmentSteps() {
+		return adjustmentSteps;
+	}
+
 }
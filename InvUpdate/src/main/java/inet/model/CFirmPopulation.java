@@ -0,0 +1,245 @@
+package inet.model;
+
+// Batch store of the c-firms: every state variable of CFirm is held per row, the row being the position of the firm
+// in the population, by a subclass: HeapFirmPopulation (one primitive column per variable) or OffHeapFirmPopulation
+// (fixed-stride records outside of the Java heap). The decision logic is not duplicated here; a single scratch CFirm
+// (the cursor) is loaded with a row, runs update() / invUpdated() and is stored back, s.t. the batch methods give
+// exactly the same results as the per-object schedule, whatever the store.
+// CFirm objects are only materialised on demand, as views of the rows, for the outputs that need objects (DataExport).
+// The views are a full copy of the firms, refreshed at every tick: a run that builds them pays for both layouts.
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public abstract class CFirmPopulation {
+
+	// ---------------------------------------------------------------------
+	// Variables
+	// ---------------------------------------------------------------------
+
+	// columns of the initial state, see initialize()
+	private static final int C = FirmSnapshot.column("c");
+	private static final int P = FirmSnapshot.column("p");
+	private static final int NW0 = FirmSnapshot.column("nw0");
+	private static final int NW1 = FirmSnapshot.column("nw1");
+
+	final IUModel model;
+	final int size;
+
+	private List<CFirm> views; // materialised lazily, only if someone asks for the CFirm objects
+	private int[] panelRows; // sorted rows of the panel views, if any
+	private List<CFirm> panelViews;
+
+	// ---------------------------------------------------------------------
+	// Constructor
+	// ---------------------------------------------------------------------
+
+	CFirmPopulation(IUModel model, int size) {
+		this.model = model;
+		this.size = size;
+	}
+
+	// same initial state, and same draws, as CFirm(IUModel, int); called by the subclasses once their rows are
+	// allocated, all zero
+	void initialize() {
+		for(int i = 0; i < size; i++) {
+			setId(i, i);
+			FirmRandom rnd = new FirmRandom(model.getRunSeed(), i);
+			set(i, NW0, rnd.nextDouble() * 10.);
+			setRngState(i, rnd.getState());
+			set(i, NW1, 1.);
+			double c = model.getParameters().getC0();
+			set(i, C, c);
+			set(i, P, (1 + model.pMarkUp) * c);
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// Batch processes
+	// ---------------------------------------------------------------------
+
+	// CFirm.Processes.Update for the firms in [from, to). The shocks of the whole range are first drawn in bulk,
+	// each firm from its own stream, and then applied
+	public void update(int from, int to) {
+		double[] u = new double[(to - from) * CFirm.SHOCKS];
+		FirmRandom rnd = new FirmRandom(0, 0);
+		for(int i = from, off = 0; i < to; i++, off += CFirm.SHOCKS) {
+			rnd.state = getRngState(i);
+			rnd.nextDoubles(u, off, CFirm.SHOCKS);
+			setRngState(i, rnd.state);
+		}
+		
+		CFirm cursor = newCursor();
+		for(int i = from, off = 0; i < to; i++, off += CFirm.SHOCKS) {
+			cursor.applyShocks(u, off); // does not read the previous state of the firm
+			storeShocks(cursor, i);
+		}
+	}
+
+	// CFirm.Processes.Inv for the firms in [from, to)
+	public void invUpdated(int from, int to) {
+		invUpdated(from, to, null, null);
+	}
+
+	// same, adding each firm to the aggregates and to the branch counters if any
+	void invUpdated(int from, int to, FirmAggregates aggregates, BranchCounters counters) {
+		CFirm cursor = newCursor();
+		for(int i = from; i < to; i++) {
+			load(i, cursor);
+			cursor.invUpdated();
+			store(cursor, i);
+			if(aggregates != null)
+				aggregates.add(i, cursor);
+			if(counters != null)
+				counters.add(cursor);
+		}
+	}
+
+	// both processes for the firms in [from, to), each firm being loaded, updated, decided and stored in turn 
+	// (CFirm.tick()); same results as update() then invUpdated()
+	void tick(int from, int to, FirmAggregates aggregates, BranchCounters counters) {
+		double[] u = new double[CFirm.SHOCKS];
+		CFirm cursor = newCursor();
+		for(int i = from; i < to; i++) {
+			load(i, cursor);
+			cursor.tick(u);
+			store(cursor, i);
+			if(aggregates != null)
+				aggregates.add(i, cursor);
+			if(counters != null)
+				counters.add(cursor);
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	CFirm newCursor() {
+		CFirm cursor = new CFirm();
+		cursor.model = model;
+		cursor.parameters = model.getParameters();
+		cursor.nw = new double[2];
+		cursor.rnd = new FirmRandom(0, 0);
+		return cursor;
+	}
+
+	// ---------------------------------------------------------------------
+	// Rows, see the subclasses
+	// ---------------------------------------------------------------------
+
+	abstract long getId(int i);
+
+	abstract void setId(int i, long id);
+
+	abstract long getRngState(int i);
+
+	abstract void setRngState(int i, long state);
+
+	// value of the column k of FirmSnapshot.COLUMNS of row i
+	abstract double get(int i, int k);
+
+	abstract void set(int i, int k, double x);
+
+	// copy row i into the firm
+	abstract void load(int i, CFirm f);
+
+	// copy the firm into row i (but its id, which does not change)
+	abstract void store(CFirm f, int i);
+
+	// copy into row i the variables of the firm drawn by CFirm.applyShocks()
+	abstract void storeShocks(CFirm f, int i);
+
+	// copies the ids (c = 0) or the states of the random streams (c = 1) of all the rows to the buffer, from its 
+	// position
+	void putLongs(int c, LongBuffer out) {
+		putLongs(c, 0, size, out);
+	}
+
+	// same, for the rows from .. to
+	void putLongs(int c, int from, int to, LongBuffer out) {
+		for(int i = from; i < to; i++)
+			out.put(c == 0 ? getId(i) : getRngState(i));
+	}
+
+	void getLongs(int c, LongBuffer in) {
+		for(int i = 0; i < size; i++) {
+			if(c == 0)
+				setId(i, in.get());
+			else
+				setRngState(i, in.get());
+		}
+	}
+
+	// copies the column k of FirmSnapshot.COLUMNS of all the rows to the buffer, from its position
+	void putColumn(int k, DoubleBuffer out) {
+		putColumn(k, 0, size, out);
+	}
+
+	// same, for the rows from .. to
+	void putColumn(int k, int from, int to, DoubleBuffer out) {
+		for(int i = from; i < to; i++)
+			out.put(get(i, k));
+	}
+
+	void getColumn(int k, DoubleBuffer in) {
+		for(int i = 0; i < size; i++)
+			set(i, k, in.get());
+	}
+
+	// brings the views, if any, in line with the rows
+	public void refreshViews() {
+		refreshViews(0, size);
+	}
+
+	public void refreshViews(int from, int to) {
+		if(views != null) {
+			for(int i = from; i < to; i++)
+				load(i, views.get(i));
+		}
+		if(panelViews != null) {
+			int p = Arrays.binarySearch(panelRows, from);
+			for(p = p < 0 ? -p - 1 : p; p < panelRows.length && panelRows[p] < to; p++)
+				load(panelRows[p], panelViews.get(p));
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public int size() {
+		return size;
+	}
+
+	// one CFirm per row, holding a copy of the row as of the end of the last tick. For export only: O(size) objects, built
+	// on the first call, then refreshed by every pass of the model. The batch processes and FirmSnapshot do not need them
+	public List<CFirm> getViews() {
+		if(views == null) {
+			views = new ArrayList<CFirm>(size);
+			for(int i = 0; i < size; i++) {
+				CFirm view = newCursor();
+				load(i, view);
+				views.add(view);
+			}
+		}
+		return views;
+	}
+
+	// one CFirm per given row (sorted, distinct), kept up to date like getViews() but without materialising the other
+	// firms: the cost of exporting a panel does not depend on the size of the population
+	public List<CFirm> getViews(int[] rows) {
+		panelRows = rows.clone();
+		panelViews = new ArrayList<CFirm>(rows.length);
+		for(int row : rows) {
+			CFirm view = newCursor();
+			load(row, view);
+			panelViews.add(view);
+		}
+		return panelViews;
+	}
+
+}
@@ -0,0 +1,324 @@
+package inet.model;
+
+// Checkpoint of the state of a model at the end of a tick, from which the run continues bit-identically: the state of
+// every firm (the columns of FirmSnapshot), its id and the state of its random stream, plus the seed of the run, the
+// id counter of CFirm, the time of the tick and the last clearing of the Bank (that of a model with no bank if none).
+// The settings the dynamics depend on (pMarkUp, the adjustment solver, the credit market and the calibration) are
+// recorded too, and check() refuses a model that differs in any of them. Written and read through memory-mapped
+// regions, one per column, s.t. the cost is that of copying the columns to and from the disk.
+// Layout: MAGIC, VERSION, time (double), runSeed (long), idCounter (long), state of the bank (BANK_STATE doubles,
+// see Bank.getState()), pMarkUp (double), adjustment solver, credit market, number of parameters of the calibration
+// (int) then each name and value (double), rows (int), number of columns (int), the name of each column, padding to
+// a multiple of 8 bytes; then the ids (rows longs), the states of the random streams (rows longs) and the columns one
+// after the other (rows doubles each). Names as short length + UTF-8 bytes. Big-endian.
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public class Checkpoint {
+
+	public static final int MAGIC = 0x49554350; // "IUCP"
+	public static final int VERSION = 3;
+	static final int BANK_STATE = 6;
+	private static final int MAX_HEADER = 1 << 16;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final double time;
+	private final long runSeed;
+	private final long idCounter;
+	private final double[] bank;
+	private final double pMarkUp;
+	private final String solver;
+	private final String creditMarket;
+	private final Map<String, Double> calibration;
+	private final int rows;
+	private final int[] columns; // index in FirmSnapshot.COLUMNS of each column of the file
+	private final long dataOffset;
+
+	private Checkpoint(File file, double time, long runSeed, long idCounter, double[] bank, double pMarkUp, String solver,
+			String creditMarket, Map<String, Double> calibration, int rows, int[] columns, long dataOffset) {
+		this.file = file;
+		this.time = time;
+		this.runSeed = runSeed;
+		this.idCounter = idCounter;
+		this.bank = bank;
+		this.pMarkUp = pMarkUp;
+		this.solver = solver;
+		this.creditMarket = creditMarket;
+		this.calibration = calibration;
+		this.rows = rows;
+		this.columns = columns;
+		this.dataOffset = dataOffset;
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// writes the state of the model, as of the end of the tick at the given time
+	public static void write(IUModel model, double time, File file) throws IOException {
+		CFirmPopulation population = model.getPopulation();
+		List<CFirm> cFirms = population == null ? model.getcFirms() : null;
+		int rows = population != null ? population.size() : cFirms.size();
+		String[] names = FirmSnapshot.COLUMNS;
+
+		double[] bank = model.bank != null ? model.bank.getState() : new Bank(model, CreditMarket.None).getState();
+		String solver = model.getAdjustmentSolver().name();
+		String creditMarket = creditMarket(model);
+		Map<String, Double> calibration = model.getParameters().values();
+
+		int headerLength = 4 + 4 + 8 + 8 + 8 + 8 * BANK_STATE + 8 + length(solver) + length(creditMarket) + 4 + 4 + 4;
+		for(String name : calibration.keySet())
+			headerLength += length(name) + 8;
+		for(String name : names)
+			headerLength += length(name);
+		if(headerLength > MAX_HEADER)
+			throw new IOException("Header of the checkpoint too long: " + headerLength + " bytes");
+		long dataOffset = (headerLength + 7) / 8 * 8;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			raf.setLength(dataOffset + 8L * rows * (2 + names.length));
+
+			MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0, dataOffset);
+			header.putInt(MAGIC).putInt(VERSION).putDouble(time).putLong(model.getRunSeed()).putLong(CFirm.getIdCounter());
+			for(double x : bank)
+				header.putDouble(x);
+			header.putDouble(model.getpMarkUp());
+			putName(header, solver);
+			putName(header, creditMarket);
+			header.putInt(calibration.size());
+			for(Map.Entry<String, Double> parameter : calibration.entrySet()) {
+				putName(header, parameter.getKey());
+				header.putDouble(parameter.getValue());
+			}
+			header.putInt(rows).putInt(names.length);
+			for(String name : names)
+				putName(header, name);
+			header.force();
+
+			for(int c = 0; c < 2 + names.length; c++) {
+				MappedByteBuffer region = channel.map(MapMode.READ_WRITE, dataOffset + 8L * rows * c, 8L * rows);
+				if(c < 2) {
+					LongBuffer longs = region.asLongBuffer();
+					if(population != null)
+						population.putLongs(c, longs);
+					else
+						for(CFirm f : cFirms)
+							longs.put(c == 0 ? f.getKey().getId() : f.rnd.state);
+				} else {
+					DoubleBuffer doubles = region.asDoubleBuffer();
+					if(population != null)
+						population.putColumn(c - 2, doubles);
+					else
+						for(CFirm f : cFirms)
+							doubles.put(get(f, c - 2));
+				}
+				region.force();
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	// reads the header of a checkpoint
+	public static Checkpoint open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, Math.min(channel.size(), MAX_HEADER));
+			if(header.getInt() != MAGIC)
+				throw new IOException(file + " is not a checkpoint");
+			if(header.getInt() != VERSION)
+				throw new IOException(file + ": unsupported version");
+			double time = header.getDouble();
+			long runSeed = header.getLong();
+			long idCounter = header.getLong();
+			double[] bank = new double[BANK_STATE];
+			for(int k = 0; k < BANK_STATE; k++)
+				bank[k] = header.getDouble();
+			double pMarkUp = header.getDouble();
+			String solver = getName(header);
+			String creditMarket = getName(header);
+			Map<String, Double> calibration = new TreeMap<String, Double>();
+			int parameters = header.getInt();
+			for(int k = 0; k < parameters; k++)
+				calibration.put(getName(header), header.getDouble());
+			int rows = header.getInt();
+			int[] columns = new int[header.getInt()];
+			for(int k = 0; k < columns.length; k++)
+				columns[k] = FirmSnapshot.column(getName(header));
+			long dataOffset = (header.position() + 7) / 8 * 8;
+			if(channel.size() != dataOffset + 8L * rows * (2 + columns.length))
+				throw new IOException(file + " is truncated");
+			return new Checkpoint(file, time, runSeed, idCounter, bank, pMarkUp, solver, creditMarket, calibration, rows,
+					columns, dataOffset);
+		} finally {
+			raf.close();
+		}
+	}
+
+	// refuses a model that would not go on as the checkpointed run: another pMarkUp, adjustment solver, credit market
+	// or calibration. Called before the firms are built
+	public void check(IUModel model) throws IOException {
+		List<String> mismatches = new ArrayList<String>();
+		if(Double.compare(pMarkUp, model.getpMarkUp()) != 0)
+			mismatches.add("pMarkUp " + pMarkUp + " != " + model.getpMarkUp());
+		if(!solver.equals(model.getAdjustmentSolver().name()))
+			mismatches.add("adjustmentSolver " + solver + " != " + model.getAdjustmentSolver());
+		if(!creditMarket.equals(creditMarket(model)))
+			mismatches.add("creditMarket " + creditMarket + " != " + creditMarket(model));
+		Map<String, Double> values = model.getParameters().values();
+		TreeSet<String> names = new TreeSet<String>(calibration.keySet());
+		names.addAll(values.keySet());
+		for(String name : names) {
+			Double written = calibration.get(name), value = values.get(name);
+			if(written == null || value == null || Double.compare(written, value) != 0)
+				mismatches.add(name + " " + written + " != " + value);
+		}
+		if(!mismatches.isEmpty())
+			throw new IOException(file + " was written by another model: " + mismatches + " (checkpoint != model)");
+	}
+
+	// overwrites the state of the firms of the model, built with getRows() firms, with the checkpoint
+	public void restore(IUModel model) throws IOException {
+		CFirmPopulation population = model.getPopulation();
+		List<CFirm> cFirms = population == null ? model.getcFirms() : null;
+		if((population != null ? population.size() : cFirms.size()) != rows)
+			throw new IOException(file + " holds " + rows + " firms, the model has " + model.getNumberOfAgents());
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			for(int c = 0; c < 2 + columns.length; c++) {
+				MappedByteBuffer region = channel.map(MapMode.READ_ONLY, dataOffset + 8L * rows * c, 8L * rows);
+				if(c < 2) {
+					LongBuffer longs = region.asLongBuffer();
+					if(population != null)
+						population.getLongs(c, longs);
+					else
+						for(CFirm f : cFirms) {
+							if(c == 0)
+								f.getKey().setId(longs.get());
+							else
+								f.rnd.state = longs.get();
+						}
+				} else {
+					DoubleBuffer doubles = region.asDoubleBuffer();
+					int k = columns[c - 2];
+					if(population != null)
+						population.getColumn(k, doubles);
+					else
+						for(CFirm f : cFirms)
+							set(f, k, doubles.get());
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		CFirm.setIdCounter(idCounter);
+		if(model.bank != null)
+			model.bank.setState(bank);
+		if(population != null)
+			population.refreshViews();
+	}
+
+	private static String creditMarket(IUModel model) {
+		return model.getCreditMarket() != null ? model.getCreditMarket().name() : CreditMarket.None.name();
+	}
+
+	// bytes of a name in the header
+	private static int length(String name) {
+		return 2 + name.getBytes(UTF8).length;
+	}
+
+	private static void putName(ByteBuffer header, String name) {
+		byte[] bytes = name.getBytes(UTF8);
+		header.putShort((short) bytes.length).put(bytes);
+	}
+
+	private static String getName(ByteBuffer header) {
+		byte[] bytes = new byte[header.getShort()];
+		header.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	// value of the column k of FirmSnapshot.COLUMNS
+	private static double get(CFirm f, int k) {
+		switch(k) {
+		case 0: return f.dInvE;
+		case 1: return f.invEStar;
+		case 2: return f.cInvE;
+		case 3: return f.cD;
+		case 4: return f.dQ;
+		case 5: return f.qStar;
+		case 6: return f.p;
+		case 7: return f.c;
+		case 8: return f.pDem;
+		case 9: return f.debt;
+		case 10: return f.nw[0];
+		case 11: return f.nw[1];
+		case 12: return f.nwPrime;
+		case 13: return f.lBar;
+		case 14: return f.lProd;
+		case 15: return f.lDebt;
+		default: throw new IllegalArgumentException("Unknown column " + k);
+		}
+	}
+
+	private static void set(CFirm f, int k, double x) {
+		switch(k) {
+		case 0: f.dInvE = x; break;
+		case 1: f.invEStar = x; break;
+		case 2: f.cInvE = x; break;
+		case 3: f.cD = x; break;
+		case 4: f.dQ = x; break;
+		case 5: f.qStar = x; break;
+		case 6: f.p = x; break;
+		case 7: f.c = x; break;
+		case 8: f.pDem = x; break;
+		case 9: f.debt = x; break;
+		case 10: f.nw[0] = x; break;
+		case 11: f.nw[1] = x; break;
+		case 12: f.nwPrime = x; break;
+		case 13: f.lBar = x; break;
+		case 14: f.lProd = x; break;
+		case 15: f.lDebt = x; break;
+		default: throw new IllegalArgumentException("Unknown column " + k);
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	// time of the tick at the end of which the checkpoint was written
+	public double getTime() {
+		return time;
+	}
+
+	public long getRunSeed() {
+		return runSeed;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+}
@@ -0,0 +1,8 @@
+package inet.model;
+
+// How the bank allocates credit once the demand of the firms exceeds its lending capacity, see Bank
+public enum CreditMarket {
+	None, // no bank: each firm draws its borrowing limit lBar
+	ProRata, // every drawn limit is scaled by the same share, adjusted until the demand meets the capacity
+	PeckingOrder; // the firms of highest net worth are served first, the others get no credit
+}
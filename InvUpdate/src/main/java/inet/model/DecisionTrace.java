@@ -0,0 +1,133 @@
+package inet.model;
+
+// Binary trace of the allocation decisions of the firms, replacing the print-outs of CFirm.
+// Records are written into a ring buffer of longs allocated once; when full, the oldest records are overwritten.
+// A record is: tick, firm id, branch, q, invEStar, nwPrime, lProd, lDebt, payment(q, nwPrime, lDebt, lProd).
+// Only the firms accepted by the filter are traced: one given firm, or one firm out of sampleEvery (by id).
+// The model holds no trace unless tracing is switched on, s.t. the cost when disabled is a null check.
+// Records are reserved atomically and the firm passes may write concurrently; read the buffer once the run is over.
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DecisionTrace {
+
+	public static final int MAGIC = 0x49555452; // "IUTR"
+	public static final int STRIDE = 9; // longs per record
+
+	private final long[] ring;
+	private final int capacity; // in records, power of two
+	private final AtomicLong written = new AtomicLong(); // total number of records written so far
+
+	private final long firmId; // < 0 --> all firms (subject to sampling)
+	private final long sampleEvery;
+
+	private volatile double tick;
+
+	// ---------------------------------------------------------------------
+	// Constructor
+	// ---------------------------------------------------------------------
+
+	public DecisionTrace(int capacity, long firmId, long sampleEvery) {
+		this.capacity = Integer.highestOneBit(Math.max(1, capacity));
+		this.ring = new long[this.capacity * STRIDE];
+		this.firmId = firmId;
+		this.sampleEvery = Math.max(1, sampleEvery);
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	public boolean accepts(long id) {
+		if(firmId >= 0)
+			return id == firmId;
+		return id % sampleEvery == 0;
+	}
+
+	public void record(long id, Branch branch, double q, double invEStar, double nwPrime, double lProd, double lDebt, double payment) {
+		long seq = written.getAndIncrement();
+		int base = (int) (seq & (capacity - 1)) * STRIDE;
+		ring[base] = Double.doubleToRawLongBits(tick);
+		ring[base + 1] = id;
+		ring[base + 2] = branch.ordinal();
+		ring[base + 3] = Double.doubleToRawLongBits(q);
+		ring[base + 4] = Double.doubleToRawLongBits(invEStar);
+		ring[base + 5] = Double.doubleToRawLongBits(nwPrime);
+		ring[base + 6] = Double.doubleToRawLongBits(lProd);
+		ring[base + 7] = Double.doubleToRawLongBits(lDebt);
+		ring[base + 8] = Double.doubleToRawLongBits(payment);
+	}
+
+	// writes the records still in the buffer, from the oldest to the most recent
+	public void writeTo(File file) throws IOException {
+		long total = written.get();
+		long first = Math.max(0, total - capacity);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(STRIDE);
+			out.writeLong(total - first);
+			for(long seq = first; seq < total; seq++) {
+				int base = (int) (seq & (capacity - 1)) * STRIDE;
+				for(int k = 0; k < STRIDE; k++)
+					out.writeLong(ring[base + k]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// reads back a file written by writeTo(), one long[STRIDE] per record
+	public static void read(File file, RecordHandler handler) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(in.readInt() != MAGIC)
+				throw new IOException(file + " is not a decision trace");
+			int stride = in.readInt();
+			long n = in.readLong();
+			long[] record = new long[stride];
+			for(long r = 0; r < n; r++) {
+				for(int k = 0; k < stride; k++)
+					record[k] = in.readLong();
+				handler.handle(record);
+			}
+		} catch(EOFException e) {
+			throw new IOException(file + " is truncated", e);
+		} finally {
+			in.close();
+		}
+	}
+
+	public interface RecordHandler {
+		void handle(long[] record) throws IOException;
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public void setTick(double tick) {
+		this.tick = tick;
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	// branch of the record number seq (0 = first record ever written), null if already overwritten or not yet written
+	public Branch getBranch(long seq) {
+		if(seq < 0 || seq >= written.get() || seq < written.get() - capacity)
+			return null;
+		return Branch.values()[(int) ring[(int) (seq & (capacity - 1)) * STRIDE + 2]];
+	}
+
+}
@@ -0,0 +1,123 @@
+package inet.model;
+
+// Distribution of the allocation of the firms over a tick, without keeping the firms: running statistics and a
+// quantile sketch of each of VARIABLES, and the number of firms in each regime (see Branch.isRegime()).
+// Filled per range of firms during the Inv pass, and merged into the aggregates of the tick (see IUModel).
+// Sketches and regimes are counts, whose merge does not depend on the order. The running statistics do, in the last
+// bits: a range keeps them per block of BLOCK consecutive firms, and the blocks are merged one by one in the order of
+// the firms, s.t. the aggregates are the same whatever the number of threads (ranges start on a multiple of BLOCK).
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FirmAggregates {
+
+	public static final String[] VARIABLES = {"cD", "dQ", "dInvE", "nwPrime", "lDebt", "lProd"};
+	static final int BLOCK = 1024; // firms per block of running statistics
+
+	private double time;
+	private final RunningStats[] stats = new RunningStats[VARIABLES.length]; // merged from the blocks
+
+	private final List<RunningStats[]> blocks = new ArrayList<RunningStats[]>(); // of a range, reused from tick to tick
+	private int usedBlocks;
+	private int blockEnd; // first firm after the current block
+	private final QuantileSketch[] sketches = new QuantileSketch[VARIABLES.length];
+	private final long[] regimes = new long[Branch.values().length];
+
+	public FirmAggregates() {
+		for(int k = 0; k < VARIABLES.length; k++) {
+			stats[k] = new RunningStats();
+			sketches[k] = new QuantileSketch();
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// the firm number i, once its decision is over; the firms of a range are added in increasing order of i
+	void add(int i, CFirm f) {
+		if(usedBlocks == 0 || i >= blockEnd)
+			nextBlock(i);
+		RunningStats[] block = blocks.get(usedBlocks - 1);
+		add(block, 0, f.cD);
+		add(block, 1, f.dQ);
+		add(block, 2, f.dInvE);
+		add(block, 3, f.nwPrime);
+		add(block, 4, f.lDebt);
+		add(block, 5, f.lProd);
+		if(f.regime != null)
+			regimes[f.regime.ordinal()]++;
+	}
+
+	private void add(RunningStats[] block, int k, double x) {
+		block[k].add(x);
+		sketches[k].add(x);
+	}
+
+	private void nextBlock(int i) {
+		if(usedBlocks == blocks.size()) {
+			RunningStats[] block = new RunningStats[VARIABLES.length];
+			for(int k = 0; k < VARIABLES.length; k++)
+				block[k] = new RunningStats();
+			blocks.add(block);
+		}
+		for(RunningStats s : blocks.get(usedBlocks))
+			s.reset();
+		usedBlocks++;
+		blockEnd = (i / BLOCK + 1) * BLOCK;
+	}
+
+	// adds the firms of other; its blocks come after the ones merged so far
+	public void merge(FirmAggregates other) {
+		for(int k = 0; k < VARIABLES.length; k++) {
+			stats[k].merge(other.stats[k]);
+			for(int b = 0; b < other.usedBlocks; b++)
+				stats[k].merge(other.blocks.get(b)[k]);
+			sketches[k].merge(other.sketches[k]);
+		}
+		for(int r = 0; r < regimes.length; r++)
+			regimes[r] += other.regimes[r];
+	}
+
+	public void reset(double time) {
+		this.time = time;
+		for(int k = 0; k < VARIABLES.length; k++) {
+			stats[k].reset();
+			sketches[k].reset();
+		}
+		Arrays.fill(regimes, 0);
+		usedBlocks = 0;
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public double getTime() {
+		return time;
+	}
+
+	public long getCount() {
+		return stats[0].getCount();
+	}
+
+	public RunningStats getStats(int variable) {
+		return stats[variable];
+	}
+
+	public QuantileSketch getSketch(int variable) {
+		return sketches[variable];
+	}
+
+	public long getRegimeCount(Branch regime) {
+		return regimes[regime.ordinal()];
+	}
+
+	// share of the firms of the tick in the regime
+	public double getRegimeShare(Branch regime) {
+		return getCount() > 0 ? (double) regimes[regime.ordinal()] / getCount() : Double.NaN;
+	}
+
+}
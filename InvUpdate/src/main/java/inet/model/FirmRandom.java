@@ -0,0 +1,69 @@
+package inet.model;
+
+// Random stream of a single firm (SplitMix64). The starting point of the stream is a hash of the seed of the run and
+// of the id of the firm, s.t. the draws of a firm do not depend on the other firms, on the order in which the firms
+// are updated or on the number of threads. The whole state is one long, cheap to hold in a column or a checkpoint.
+
+public final class FirmRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L; // increment of the sequence, odd
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	long state;
+
+	public FirmRandom(long runSeed, long id) {
+		this.state = mix64(runSeed ^ mix64(id * GOLDEN_GAMMA + GOLDEN_GAMMA));
+	}
+
+	// ---------------------------------------------------------------------
+	// Draws
+	// ---------------------------------------------------------------------
+
+	public long nextLong() {
+		return mix64(state += GOLDEN_GAMMA);
+	}
+
+	// uniform in [0, 1)
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	// uniform in {0, ..., bound - 1}
+	public int nextInt(int bound) {
+		return (int) (((nextLong() >>> 33) * bound) >>> 31);
+	}
+
+	// fills buf[off, off + len) with uniform draws in [0, 1)
+	public void nextDoubles(double[] buf, int off, int len) {
+		long s = state;
+		for(int k = off; k < off + len; k++) {
+			s += GOLDEN_GAMMA;
+			buf[k] = (mix64(s) >>> 11) * DOUBLE_UNIT;
+		}
+		state = s;
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	// finaliser of MurmurHash3 / SplitMix64
+	static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public long getState() {
+		return state;
+	}
+
+	public void setState(long state) {
+		this.state = state;
+	}
+
+}
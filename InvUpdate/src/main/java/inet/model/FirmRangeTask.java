@@ -0,0 +1,41 @@
+package inet.model;
+
+// Fork/join task running a pass over the firms [from, to), split in halves until the range is below the grain.
+// Within a phase each firm only touches its own state, hence the way the range is split has no effect on the results.
+// Ranges are split on multiples of align, s.t. blocks of align firms are never shared between ranges.
+
+import java.util.concurrent.RecursiveAction;
+
+class FirmRangeTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	interface Pass {
+		void run(int from, int to);
+	}
+
+	private final Pass pass;
+	private final int from;
+	private final int to;
+	private final int grain;
+	private final int align;
+
+	FirmRangeTask(Pass pass, int from, int to, int grain, int align) {
+		this.pass = pass;
+		this.from = from;
+		this.to = to;
+		this.grain = grain;
+		this.align = align;
+	}
+
+	@Override
+	protected void compute() {
+		int mid = ((from + to) >>> 1) / align * align;
+		if(to - from <= grain || mid <= from) {
+			pass.run(from, to);
+		} else {
+			invokeAll(new FirmRangeTask(pass, from, mid, grain, align), new FirmRangeTask(pass, mid, to, grain, align));
+		}
+	}
+
+}
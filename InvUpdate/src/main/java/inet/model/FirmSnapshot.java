@@ -0,0 +1,151 @@
+package inet.model;
+
+// Copy of the exportable state of the firms (all of them, or a panel) at a given time, held in primitive columns (one double[] per
+// variable of CFirm, plus the ids). Filled from either store of the model (CFirm objects or a CFirmPopulation), and
+// reused from one snapshot to the next as long as the population does not grow.
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.List;
+
+public class FirmSnapshot {
+
+	public static final String[] COLUMNS = {"dInvE", "invEStar", "cInvE", "cD", "dQ", "qStar", "p", "c", "pDem", "debt",
+			"nw0", "nw1", "nwPrime", "lBar", "lProd", "lDebt"};
+
+	private double time;
+	private int size;
+	private long[] id;
+	private double[][] values; // values[column][row]
+
+	public FirmSnapshot(int capacity) {
+		allocate(capacity);
+	}
+
+	// index of the column name in COLUMNS
+	public static int column(String name) {
+		for(int k = 0; k < COLUMNS.length; k++)
+			if(COLUMNS[k].equals(name))
+				return k;
+		throw new IllegalArgumentException("Unknown column " + name);
+	}
+
+	private void allocate(int capacity) {
+		id = new long[capacity];
+		values = new double[COLUMNS.length][capacity];
+	}
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	public void capture(IUModel model, double time) {
+		capture(model, time, null);
+	}
+
+	// copies the firms at the given rows (sorted; all the firms if null) 
+	public void capture(IUModel model, double time, int[] rows) {
+		capture(model, time, rows, 0, firms(model, rows));
+	}
+
+	// copies the firms from .. to of the given rows (sorted; all the firms if null), as the rows 0 .. to - from of the
+	// snapshot: a part of the snapshot of all of them, s.t. a large population is exported without a copy in full
+	public void capture(IUModel model, double time, int[] rows, int from, int to) {
+		this.time = time;
+		CFirmPopulation population = model.getPopulation();
+		int n = to - from;
+		if(n > id.length)
+			allocate(n);
+		this.size = n;
+
+		if(population != null && rows == null) {
+			population.putLongs(0, from, to, LongBuffer.wrap(id));
+			for(int k = 0; k < COLUMNS.length; k++)
+				population.putColumn(k, from, to, DoubleBuffer.wrap(values[k]));
+		} else if(population != null) {
+			CFirm cursor = population.newCursor();
+			for(int i = 0; i < n; i++) {
+				population.load(rows[from + i], cursor);
+				id[i] = cursor.getKey().getId();
+				set(i, cursor);
+			}
+		} else if(rows != null) {
+			List<CFirm> cFirms = model.getcFirms();
+			for(int i = 0; i < n; i++) {
+				CFirm f = cFirms.get(rows[from + i]);
+				id[i] = f.getKey().getId();
+				set(i, f);
+			}
+		} else {
+			int i = 0;
+			for(CFirm f : model.getcFirms().subList(from, to)) {
+				id[i] = f.getKey().getId();
+				set(i++, f);
+			}
+		}
+	}
+
+	// number of firms captured from the given rows (all the firms if null)
+	public static int firms(IUModel model, int[] rows) {
+		CFirmPopulation population = model.getPopulation();
+		return rows != null ? rows.length : population != null ? population.size() : model.getcFirms().size();
+	}
+
+	// empties the snapshot for size rows at the given time, to be filled through getIds() and getColumn() (e.g. when
+	// reading a snapshot back from a file)
+	public void reset(double time, int size) {
+		this.time = time;
+		if(size > id.length)
+			allocate(size);
+		this.size = size;
+	}
+
+	private void set(int i, CFirm f) {
+		values[0][i] = f.dInvE;
+		values[1][i] = f.invEStar;
+		values[2][i] = f.cInvE;
+		values[3][i] = f.cD;
+		values[4][i] = f.dQ;
+		values[5][i] = f.qStar;
+		values[6][i] = f.p;
+		values[7][i] = f.c;
+		values[8][i] = f.pDem;
+		values[9][i] = f.debt;
+		values[10][i] = f.nw[0];
+		values[11][i] = f.nw[1];
+		values[12][i] = f.nwPrime;
+		values[13][i] = f.lBar;
+		values[14][i] = f.lProd;
+		values[15][i] = f.lDebt;
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public double getTime() {
+		return time;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getId(int row) {
+		return id[row];
+	}
+
+	public double get(int column, int row) {
+		return values[column][row];
+	}
+
+	// the first size() entries are the current snapshot
+	public double[] getColumn(int column) {
+		return values[column];
+	}
+
+	public long[] getIds() {
+		return id;
+	}
+
+}
@@ -0,0 +1,65 @@
+package inet.model;
+
+// Recording of the JFR events of the model (TickPhaseEvent, SlowDecisionEvent) into a file, started by the model
+// (IUModel.flightRecording) s.t. a run can be profiled without options on the command line. Stopped and written at
+// the end of the run, or when the JVM exits. 
+// JFR is part of JDK 11+ and of OpenJDK 8u262+, the oldest JDKs the model builds with (enforced by the pom); run on
+// a JVM without it (AVAILABLE false), the model records no event.
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+
+import jdk.jfr.Recording;
+
+import org.apache.log4j.Logger;
+
+public class FlightRecording {
+
+	private final static Logger log = Logger.getLogger(FlightRecording.class);
+
+	public static final boolean AVAILABLE = available();
+
+	private final Recording recording;
+	private final File file;
+
+	private FlightRecording(Recording recording, File file) {
+		this.recording = recording;
+		this.file = file;
+	}
+
+	private static boolean available() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	// starts recording the events of the model, the decisions slower than slowDecisionMicros
+	public static FlightRecording start(File file, double slowDecisionMicros) throws IOException {
+		Recording recording = new Recording();
+		recording.setName("InvUpdate");
+		recording.enable(TickPhaseEvent.class);
+		recording.enable(SlowDecisionEvent.class).withThreshold(Duration.ofNanos(Math.round(slowDecisionMicros * 1000.)));
+		recording.setDestination(file.toPath());
+		recording.setDumpOnExit(true);
+		recording.start();
+		log.info("Recording the JFR events of the model into " + file);
+		return new FlightRecording(recording, file);
+	}
+
+	// stops the recording and writes it
+	public void stop() {
+		try {
+			recording.stop(); // written to the destination
+			recording.close();
+			log.info("JFR events of the model written to " + file);
+		} catch (IllegalStateException e) { // already stopped
+		}
+	}
+
+}
@@ -0,0 +1,172 @@
+package inet.model;
+
+// Structure-of-arrays store of the c-firms (see CFirmPopulation): every state variable of CFirm is held as a
+// primitive column on the heap, indexed by the row of the firm.
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+public class HeapFirmPopulation extends CFirmPopulation {
+
+	// ---------------------------------------------------------------------
+	// Variables
+	// ---------------------------------------------------------------------
+
+	final long[] id; // id of the PanelEntityKey of each firm
+	final long[] rngState; // state of the random stream of each firm
+
+	// choice variables
+	final double[] dInvE;
+	final double[] invEStar;
+	final double[] cInvE;
+	final double[] cD;
+	final double[] dQ;
+	final double[] qStar;
+
+	final double[] p;
+	final double[] c;
+
+	final double[] pDem;
+	final double[] debt;
+
+	// liquid asset variables; nw0 and nw1 are the two entries of CFirm.nw
+	final double[] nw0;
+	final double[] nw1;
+	final double[] nwPrime;
+
+	// loan variables
+	final double[] lBar;
+	final double[] lProd;
+	final double[] lDebt;
+
+	private final double[][] columns; // in the order of FirmSnapshot.COLUMNS
+
+	// ---------------------------------------------------------------------
+	// Constructor
+	// ---------------------------------------------------------------------
+
+	public HeapFirmPopulation(IUModel model, int size) {
+		super(model, size);
+
+		id = new long[size];
+		rngState = new long[size];
+		dInvE = new double[size];
+		invEStar = new double[size];
+		cInvE = new double[size];
+		cD = new double[size];
+		dQ = new double[size];
+		qStar = new double[size];
+		p = new double[size];
+		c = new double[size];
+		pDem = new double[size];
+		debt = new double[size];
+		nw0 = new double[size];
+		nw1 = new double[size];
+		nwPrime = new double[size];
+		lBar = new double[size];
+		lProd = new double[size];
+		lDebt = new double[size];
+		columns = new double[][] {dInvE, invEStar, cInvE, cD, dQ, qStar, p, c, pDem, debt, nw0, nw1, nwPrime, lBar, lProd, lDebt};
+
+		initialize();
+	}
+
+	// ---------------------------------------------------------------------
+	// Rows
+	// ---------------------------------------------------------------------
+
+	long getId(int i) {
+		return id[i];
+	}
+
+	void setId(int i, long id) {
+		this.id[i] = id;
+	}
+
+	long getRngState(int i) {
+		return rngState[i];
+	}
+
+	void setRngState(int i, long state) {
+		rngState[i] = state;
+	}
+
+	double get(int i, int k) {
+		return columns[k][i];
+	}
+
+	void set(int i, int k, double x) {
+		columns[k][i] = x;
+	}
+
+	void load(int i, CFirm f) {
+		f.getKey().setId(id[i]);
+		f.rnd.state = rngState[i];
+		f.dInvE = dInvE[i];
+		f.invEStar = invEStar[i];
+		f.cInvE = cInvE[i];
+		f.cD = cD[i];
+		f.dQ = dQ[i];
+		f.qStar = qStar[i];
+		f.p = p[i];
+		f.c = c[i];
+		f.pDem = pDem[i];
+		f.debt = debt[i];
+		f.nw[0] = nw0[i];
+		f.nw[1] = nw1[i];
+		f.nwPrime = nwPrime[i];
+		f.lBar = lBar[i];
+		f.lProd = lProd[i];
+		f.lDebt = lDebt[i];
+	}
+
+	void store(CFirm f, int i) {
+		rngState[i] = f.rnd.state;
+		dInvE[i] = f.dInvE;
+		invEStar[i] = f.invEStar;
+		cInvE[i] = f.cInvE;
+		cD[i] = f.cD;
+		dQ[i] = f.dQ;
+		qStar[i] = f.qStar;
+		p[i] = f.p;
+		c[i] = f.c;
+		pDem[i] = f.pDem;
+		debt[i] = f.debt;
+		nw0[i] = f.nw[0];
+		nw1[i] = f.nw[1];
+		nwPrime[i] = f.nwPrime;
+		lBar[i] = f.lBar;
+		lProd[i] = f.lProd;
+		lDebt[i] = f.lDebt;
+	}
+
+	void storeShocks(CFirm f, int i) {
+		pDem[i] = f.pDem;
+		dQ[i] = f.dQ;
+		nw0[i] = f.nw[0];
+		dInvE[i] = f.dInvE;
+		debt[i] = f.debt;
+		lBar[i] = f.lBar;
+		lDebt[i] = f.lDebt;
+		lProd[i] = f.lProd;
+	}
+
+	// bulk copies of the columns
+
+	void putLongs(int c, int from, int to, LongBuffer out) {
+		out.put(c == 0 ? id : rngState, from, to - from);
+	}
+
+	void getLongs(int c, LongBuffer in) {
+		in.get(c == 0 ? id : rngState, 0, size);
+	}
+
+	void putColumn(int k, int from, int to, DoubleBuffer out) {
+		out.put(columns[k], from, to - from);
+	}
+
+	void getColumn(int k, DoubleBuffer in) {
+		in.get(columns[k], 0, size);
+	}
+
+}
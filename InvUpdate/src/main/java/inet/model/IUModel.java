@@ -1,6 +1,8 @@
 package inet.model;
 
 import microsim.engine.AbstractSimulationManager;
+import microsim.engine.EngineListener;
+import microsim.engine.SimulationEngine;
 import microsim.annotation.GUIparameter;
 import microsim.event.EventGroup;
 import microsim.event.EventListener;
@@ -8,10 +10,21 @@ import microsim.event.Order;
 import microsim.event.SystemEventType;
 import inet.data.Parameters;
 
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+public class IUModel extends AbstractSimulationManager implements EventListener, EngineListener {
 
-public class IUModel extends AbstractSimulationManager implements EventListener {
+	private final static Logger log = Logger.getLogger(IUModel.class);
 
 	@GUIparameter(description = "Set the number of agents to create")
 	Integer numberOfAgents = 1;
@@ -22,9 +35,77 @@ public class IUModel extends AbstractSimulationManager implements EventListener
 	@GUIparameter(description = "Price mark up over the marginal cost (c=1)")
 	Double pMarkUp = 1.2; // price of the consumption good
 	
-	static double r = 0.02; // int. rate on the debt 
+	@GUIparameter(description = "Store the firms as primitive columns and run their processes in batch")
+	Boolean structureOfArrays = false;
+	
+	@GUIparameter(description = "Store the firms outside of the heap, one fixed-stride record per firm (batch processes, as structureOfArrays)")
+	Boolean offHeap = false;
+	
+	@GUIparameter(description = "File mapping the off-heap records, s.t. the firms may not fit in memory (empty = direct memory)")
+	String offHeapFile = "";
+	
+	@GUIparameter(description = "Run both processes of each firm back to back, in a single pass over the firms per tick (same results)")
+	Boolean fusedTick = false;
+	
+	@GUIparameter(description = "Number of threads running the firm processes (1 = serial)")
+	Integer parallelism = 1;
+	
+	@GUIparameter(description = "How the adjustment processes cut back investment: Loop, ClosedForm, Checked (both, reporting differences) or Bracketed (root finding to 10^-speedConv, O(log) in the machines cut)")
+	AdjustmentSolver adjustmentSolver = AdjustmentSolver.Loop;
+	
+	@GUIparameter(description = "Credit market: None (each firm draws its borrowing limit), ProRata or PeckingOrder (by net worth) rationing by a bank lending up to lambda times the net worth of the firms")
+	CreditMarket creditMarket = CreditMarket.None;
+	
+	@GUIparameter(description = "Record the allocation decisions of the firms into a binary trace (decisions.trace)")
+	Boolean traceDecisions = false;
+	
+	@GUIparameter(description = "Id of the only firm to trace (-1 = sample the firms)")
+	Long traceFirmId = -1L;
+	
+	@GUIparameter(description = "Trace one firm out of traceSampleEvery (by id)")
+	Integer traceSampleEvery = 1;
+	
+	@GUIparameter(description = "Time of the tick at the end of which to write a checkpoint (-1 = none)")
+	Double checkpointTime = -1.;
+	
+	@GUIparameter(description = "Checkpoint file to restore the run from, the run going on with the next tick (empty = start from scratch)")
+	String restoreFrom = "";
+	
+	@GUIparameter(description = "Properties file overriding the default calibration, one parameter = value per line (empty = defaults)")
+	String calibrationFile = "";
+	
+	@GUIparameter(description = "Time the allocation decisions of the firms, as JFR events of those slower than slowDecisionMicros (needs JFR)")
+	Boolean slowDecisionEvents = false;
+	
+	@GUIparameter(description = "Latency in microseconds above which a decision is recorded as a JFR event")
+	Double slowDecisionMicros = 100.;
+	
+	@GUIparameter(description = "File to record the JFR events of the model into, from the start to the end of the run (empty = none; recordings started with the JVM still get the events)")
+	String flightRecording = "";
+	
+	int traceCapacity = 1 << 16; // number of records kept in the trace, the oldest are overwritten
+	
+	private Parameters parameters; // calibration; built in buildObjects() unless set 
+	private final Map<String, Double> calibrationOverrides = new TreeMap<String, Double>(); // applied on top of calibrationFile
+
+	private double time; // of the current tick
+	private double startTime = 0.; // of the first tick; the one after the checkpoint if restored
+
+	private Long runSeed; // seed from which the random streams of the firms are derived; drawn from the engine if not set 
 
 	private List<CFirm> cFirms;
+	private CFirmPopulation population; // only used if structureOfArrays or offHeap
+	private ForkJoinPool pool; // only used if parallelism > 1
+	DecisionTrace trace; // null unless traceDecisions
+	Bank bank; // null if creditMarket is None
+	boolean timeDecisions; // slowDecisionEvents, if JFR is available
+	private FlightRecording recording; // null unless flightRecording
+	private FirmAggregates aggregates; // aggregates of the last tick, null unless enabled (see enableAggregates())
+	private final Map<Integer, FirmAggregates> partials = new ConcurrentHashMap<Integer, FirmAggregates>(); // by first firm of the range, reused from tick to tick
+	private BranchCounters counters; // branch counters of the last tick, null unless enabled (see enableBranchCounters())
+	private final Map<Integer, BranchCounters> counterPartials = new ConcurrentHashMap<Integer, BranchCounters>(); // id.
+	
+	private static final int minGrain = 1024; // smallest range of firms handed to a thread
 
 	// ---------------------------------------------------------------------
 	// Manager methods
@@ -32,35 +113,126 @@ public class IUModel extends AbstractSimulationManager implements EventListener
 
 	public void buildObjects() {
 		// load the parameters of the model 
-		Parameters.calibration();
+		if(parameters == null)
+			parameters = buildParameters();
+		Checkpoint checkpoint = null;
+		if(restoreFrom != null && !restoreFrom.isEmpty()) { // same firms and seed as the checkpointed run
+			try {
+				checkpoint = Checkpoint.open(new File(restoreFrom));
+				checkpoint.check(this);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read the checkpoint " + restoreFrom, e);
+			}
+			numberOfAgents = checkpoint.getRows();
+			runSeed = checkpoint.getRunSeed();
+			startTime = checkpoint.getTime() + 1.;
+		}
+		if(runSeed == null)
+			runSeed = SimulationEngine.getRnd().nextLong();
 		// create the agents
-		cFirms = new ArrayList<CFirm>();
-		for(int i=0; i < numberOfAgents; i++) {
-			CFirm cFirm = new CFirm(this, i);
-			cFirms.add(cFirm);
+		if(offHeap && offHeapFile != null && !offHeapFile.isEmpty()) {
+			try {
+				population = OffHeapFirmPopulation.mapped(this, numberOfAgents, new File(offHeapFile));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not map the firms into " + offHeapFile, e);
+			}
+		} else if(offHeap) {
+			population = OffHeapFirmPopulation.direct(this, numberOfAgents);
+		} else if(structureOfArrays) {
+			population = new HeapFirmPopulation(this, numberOfAgents);
+		} else {
+			cFirms = new ArrayList<CFirm>();
+			for(int i=0; i < numberOfAgents; i++) {
+				CFirm cFirm = new CFirm(this, i);
+				cFirms.add(cFirm);
+			}
+		}
+		if(parallelism > 1)
+			pool = new ForkJoinPool(parallelism);
+		if(creditMarket != null && creditMarket != CreditMarket.None)
+			bank = new Bank(this, creditMarket);
+		if(traceDecisions)
+			trace = new DecisionTrace(traceCapacity, traceFirmId, traceSampleEvery);
+		startFlightRecording();
+		if(checkpoint != null) {
+			try {
+				checkpoint.restore(this);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not restore the checkpoint " + restoreFrom, e);
+			}
+			log.info("Restored " + numberOfAgents + " firms from " + restoreFrom + ", going on from time " + startTime);
 		}
 
 	}
 
+	private Parameters buildParameters() {
+		Parameters.Builder builder = Parameters.builder();
+		if(calibrationFile != null && !calibrationFile.isEmpty()) {
+			try {
+				builder.load(new File(calibrationFile));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read the calibration " + calibrationFile, e);
+			}
+		}
+		return builder.set(calibrationOverrides).build();
+	}
+
 	public void buildSchedule() {
 		EventGroup eventGroup = new EventGroup();
 
-		 eventGroup.addEvent(this, Processes.Update);
-		 eventGroup.addCollectionEvent(cFirms, CFirm.Processes.Update);
-		 eventGroup.addCollectionEvent(cFirms, CFirm.Processes.Inv);		
-		getEngine().getEventList().scheduleRepeat(eventGroup, 0., 0, 1.); 
+		 // one pass over (ranges of) the firms per process, s.t. each pass is timed as a whole (see TickPhaseEvent), 
+		 // or a single event per tick if fusedTick. The Inv pass always goes through the model: the aggregates and 
+		 // branch counters may be enabled by the managers built after this one (see IUCollector)
+		 if(fusedTick) {
+			 eventGroup.addEvent(this, Processes.Tick);
+		 } else {
+			 eventGroup.addEvent(this, Processes.Update);
+			 eventGroup.addEvent(this, Processes.FirmsUpdate);
+			 eventGroup.addEvent(this, Processes.FirmsInv);
+		 }
+		getEngine().getEventList().scheduleRepeat(eventGroup, startTime, 0, 1.); 
+
+		if(checkpointTime >= startTime) { // once the tick is over
+			EventGroup checkpointGroup = new EventGroup();
+			checkpointGroup.addEvent(this, Processes.Checkpoint);
+			getEngine().getEventList().scheduleOnce(checkpointGroup, checkpointTime, Order.AFTER_ALL.getOrdering()-1);
+		}
+
+		if(trace != null) { // written once the last tick is over
+			EventGroup traceGroup = new EventGroup();
+			traceGroup.addEvent(this, Processes.WriteTrace);
+			getEngine().getEventList().scheduleOnce(traceGroup, endTime, Order.AFTER_ALL.getOrdering()-1);
+		}
 
 		getEngine().getEventList().scheduleSystem(endTime, Order.AFTER_ALL.getOrdering(), 0., getEngine(), SystemEventType.Stop);
+		if(recording != null || pool != null)
+			getEngine().addEngineListener(this);
 	
 	}
 
+	// ---------------------------------------------------------------------
+	// EngineListener
+	// ---------------------------------------------------------------------
+
+	public void onEngineEvent(SystemEventType event) {
+		if(event.equals(SystemEventType.Stop)) {
+			stopFlightRecording();
+			shutdownPool();
+		}
+	}
+
 
 	// ---------------------------------------------------------------------
 	// EventListener
 	// ---------------------------------------------------------------------
 
 	public enum Processes {
-		Update;
+		Update,
+		FirmsUpdate,
+		FirmsInv,
+		Tick,
+		WriteTrace,
+		Checkpoint;
 	}
 
 	public void onEvent(Enum<?> type) {
@@ -68,16 +240,351 @@ public class IUModel extends AbstractSimulationManager implements EventListener
 		case Update:
 			update();
 			break;
+		case FirmsUpdate:
+			updateFirms();
+			break;
+		case FirmsInv:
+			invUpdateFirms();
+			break;
+		case Tick:
+			update();
+			tickFirms();
+			break;
+		case WriteTrace:
+			writeTrace();
+			break;
+		case Checkpoint:
+			writeCheckpoint();
+			break;
 		}
 	}
 	
 	public void update(){
+		update(getEngine().getTime());
+	}
+	
+	void update(double time){
+		TickPhaseEvent event = FlightRecording.AVAILABLE ? TickPhaseEvent.begin("Update", time, 0) : null;
+		this.time = time;
+		if(trace != null)
+			trace.setTick(time);
+		if(event != null)
+			event.commit();
+	}
+	
+	// one tick outside of the engine's schedule: the same processes, in the same order, as the event group of buildSchedule(). 
+	// Used to run the model without the (singleton) SimulationEngine, e.g. for concurrent replications 
+	public void step(double time){
+		update(time);
+		if(fusedTick) {
+			tickFirms();
+		} else {
+			updateFirms();
+			invUpdateFirms();
+		}
+	}
+	
+	void writeTrace() {
+		File file = new File(getEngine().getCurrentExperiment().getOutputFolder(), "decisions.trace");
+		try {
+			trace.writeTo(file);
+			log.info("Decision trace written to " + file + " (" + trace.getWritten() + " records recorded)");
+		} catch (IOException e) {
+			log.error("Could not write the decision trace to " + file, e);
+		}
+	}
+	
+	void writeCheckpoint() {
+		File file = new File(getEngine().getCurrentExperiment().getOutputFolder(), "checkpoint_" + getEngine().getTime() + ".iuck");
+		try {
+			writeCheckpoint(file);
+		} catch (IOException e) {
+			log.error("Could not write the checkpoint to " + file, e);
+		}
+	}
+	
+	// writes the state of the model as of the end of the current tick; restoreFrom = file goes on from the next tick 
+	public void writeCheckpoint(File file) throws IOException {
+		long start = System.currentTimeMillis();
+		Checkpoint.write(this, time, file);
+		log.info("Checkpoint at time " + time + " written to " + file + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+	
+	// ---------------------------------------------------------------------
+	// Own methods, firm passes
+	// ---------------------------------------------------------------------
+	
+	// CFirm.Processes.Update for all firms. Each firm draws from its own stream: run over ranges of firms in parallel
+	void updateFirms() {
+		TickPhaseEvent event = FlightRecording.AVAILABLE ? TickPhaseEvent.begin("FirmsUpdate", time, numberOfAgents) : null;
+		if(population != null) {
+			forEachRange(new FirmRangeTask.Pass() {
+				public void run(int from, int to) {
+					population.update(from, to);
+				}
+			});
+		} else {
+			forEachRange(new FirmRangeTask.Pass() {
+				public void run(int from, int to) {
+					double[] u = new double[CFirm.SHOCKS]; // the draws of each firm in turn
+					for(int i = from; i < to; i++)
+						cFirms.get(i).update(u);
+				}
+			});
+		}
+		if(event != null)
+			event.commit();
+	}
+	
+	// CFirm.Processes.Inv for all firms. No draws and no shared state: run over ranges of firms in parallel. 
+	// If enabled, the aggregates and the branch counters are computed along, one partial per range, and merged once all 
+	// ranges are done 
+	void invUpdateFirms() {
+		TickPhaseEvent event = FlightRecording.AVAILABLE ? TickPhaseEvent.begin("FirmsInv", time, numberOfAgents) : null;
+		if(population != null) {
+			forEachRange(new FirmRangeTask.Pass() {
+				public void run(int from, int to) {
+					population.invUpdated(from, to, partial(from), counters(from));
+					population.refreshViews(from, to);
+				}
+			});
+		} else {
+			forEachRange(new FirmRangeTask.Pass() {
+				public void run(int from, int to) {
+					FirmAggregates partial = partial(from);
+					BranchCounters rangeCounters = counters(from);
+					for(int i = from; i < to; i++) {
+						CFirm cFirm = cFirms.get(i);
+						cFirm.invUpdated();
+						if(partial != null)
+							partial.add(i, cFirm);
+						if(rangeCounters != null)
+							rangeCounters.add(cFirm);
+					}
+				}
+			});
+		}
+		if(aggregates != null)
+			mergePartials();
+		if(counters != null)
+			mergeCounters();
+		if(event != null)
+			event.commit();
+		if(bank != null)
+			bank.clear(time);
+	}
+	
+	// CFirm.Processes.Update then CFirm.Processes.Inv for each firm in turn, in a single pass over ranges of firms: the 
+	// state of a firm is decided right after being drawn. Same results as updateFirms() then invUpdateFirms(), the 
+	// firms being independent within a tick 
+	void tickFirms() {
+		TickPhaseEvent event = FlightRecording.AVAILABLE ? TickPhaseEvent.begin("FirmsTick", time, numberOfAgents) : null;
+		if(population != null) {
+			forEachRange(new FirmRangeTask.Pass() {
+				public void run(int from, int to) {
+					population.tick(from, to, partial(from), counters(from));
+					population.refreshViews(from, to);
+				}
+			});
+		} else {
+			forEachRange(new FirmRangeTask.Pass() {
+				public void run(int from, int to) {
+					FirmAggregates partial = partial(from);
+					BranchCounters rangeCounters = counters(from);
+					double[] u = new double[CFirm.SHOCKS];
+					for(int i = from; i < to; i++) {
+						CFirm cFirm = cFirms.get(i);
+						cFirm.tick(u);
+						if(partial != null)
+							partial.add(i, cFirm);
+						if(rangeCounters != null)
+							rangeCounters.add(cFirm);
+					}
+				}
+			});
+		}
+		if(aggregates != null)
+			mergePartials();
+		if(counters != null)
+			mergeCounters();
+		if(event != null)
+			event.commit();
+		if(bank != null)
+			bank.clear(time);
+	}
+	
+	// aggregates of the range starting at from, null if the aggregates are not enabled 
+	private FirmAggregates partial(int from) {
+		if(aggregates == null)
+			return null;
+		FirmAggregates partial = partials.get(from);
+		if(partial == null) {
+			partial = new FirmAggregates();
+			partials.put(from, partial);
+		} 
+		return partial;
+	}
+	
+	// merges the partials in the order of the ranges, s.t. the aggregates do not depend on the scheduling of the threads 
+	private void mergePartials() {
+		aggregates.reset(time);
+		for(FirmAggregates partial : new TreeMap<Integer, FirmAggregates>(partials).values()) {
+			aggregates.merge(partial);
+			partial.reset(time);
+		}
+	}
+	
+	// branch counters of the range starting at from, null if not enabled 
+	private BranchCounters counters(int from) {
+		if(counters == null)
+			return null;
+		BranchCounters partial = counterPartials.get(from);
+		if(partial == null) {
+			partial = new BranchCounters();
+			counterPartials.put(from, partial);
+		} 
+		return partial;
+	}
+	
+	private void mergeCounters() {
+		counters.reset(time);
+		for(BranchCounters partial : counterPartials.values()) {
+			counters.merge(partial);
+			partial.reset(time);
+		}
+	}
+	
+	// applies the pass to [0, numberOfAgents), split across the pool if any
+	void forEachRange(FirmRangeTask.Pass pass) {
+		int n = numberOfAgents;
+		if(pool == null || n <= minGrain) {
+			pass.run(0, n);
+		} else {
+			int grain = Math.max(minGrain, n / (4 * parallelism)); // a few ranges per thread, for load balancing 
+			pool.invoke(new FirmRangeTask(pass, 0, n, grain, FirmAggregates.BLOCK));
+		}
+	}
+	
+	// ---------------------------------------------------------------------
+	// Own methods, flight recording
+	// ---------------------------------------------------------------------
+	
+	private void startFlightRecording() {
+		timeDecisions = slowDecisionEvents && FlightRecording.AVAILABLE;
+		if(slowDecisionEvents && !FlightRecording.AVAILABLE)
+			log.warn("JFR is not available in this JVM, no decision is timed");
+		if(flightRecording == null || flightRecording.isEmpty())
+			return;
+		if(!FlightRecording.AVAILABLE) {
+			log.warn("JFR is not available in this JVM, " + flightRecording + " is not recorded");
+			return;
+		}
+		try {
+			recording = FlightRecording.start(new File(flightRecording), slowDecisionMicros);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not record into " + flightRecording, e);
+		}
+	}
+	
+	// writes the recording started by the model, if any; called on Stop, or once done stepping the model outside of 
+	// the engine 
+	public void stopFlightRecording() {
+		if(recording != null) {
+			recording.stop();
+			recording = null;
+		}
+	}
+	
+	// stops the worker threads of the pool, if any, s.t. a process running many models does not keep one pool per model;
+	// called on Stop, or once done stepping the model outside of the engine. Any later pass runs on the calling thread
+	public void shutdownPool() {
+		if(pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
 	}
 	
 	// ---------------------------------------------------------------------
 	// Access methods
 	// ---------------------------------------------------------------------
 
+	// time of the current tick 
+	double getTick() {
+		return time;
+	}
+
+	// time of the first tick of the run: 0, or the tick after the checkpoint the run was restored from 
+	public double getStartTime() {
+		return startTime;
+	}
+
+	public Parameters getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(Parameters parameters) {
+		this.parameters = parameters;
+	}
+
+	// overrides the parameter name of the calibration (see Parameters.Builder.set()), before buildObjects()
+	public void setCalibrationOverride(String name, double value) {
+		Parameters.builder().set(name, value); // fails on unknown parameters
+		calibrationOverrides.put(name, value);
+	}
+
+	// overrides of the calibration set so far, by name
+	public Map<String, Double> getCalibrationOverrides() {
+		return Collections.unmodifiableMap(calibrationOverrides);
+	}
+
+	public String getCalibrationFile() {
+		return calibrationFile;
+	}
+
+	public void setCalibrationFile(String calibrationFile) {
+		this.calibrationFile = calibrationFile;
+	}
+
+	public Boolean getSlowDecisionEvents() {
+		return slowDecisionEvents;
+	}
+
+	public void setSlowDecisionEvents(Boolean slowDecisionEvents) {
+		this.slowDecisionEvents = slowDecisionEvents;
+	}
+
+	public Double getSlowDecisionMicros() {
+		return slowDecisionMicros;
+	}
+
+	public void setSlowDecisionMicros(Double slowDecisionMicros) {
+		this.slowDecisionMicros = slowDecisionMicros;
+	}
+
+	public String getFlightRecording() {
+		return flightRecording;
+	}
+
+	public void setFlightRecording(String flightRecording) {
+		this.flightRecording = flightRecording;
+	}
+
+	public Double getCheckpointTime() {
+		return checkpointTime;
+	}
+
+	public void setCheckpointTime(Double checkpointTime) {
+		this.checkpointTime = checkpointTime;
+	}
+
+	public String getRestoreFrom() {
+		return restoreFrom;
+	}
+
+	public void setRestoreFrom(String restoreFrom) {
+		this.restoreFrom = restoreFrom;
+	}
+
 	public Double getEndTime() {
 		return endTime;
 	}
@@ -95,14 +602,17 @@ public class IUModel extends AbstractSimulationManager implements EventListener
 	}
 
 	public List<CFirm> getAgentsCreated() {
-		return cFirms;
+		return getcFirms();
 	}
 
 	public void setAgentsCreated(List<CFirm> agentsCreated) {
 		this.cFirms = agentsCreated;
 	}
 
+	// the firms as objects; with a population, its views (see CFirmPopulation.getViews(), O(numberOfAgents), export only)
 	public List<CFirm> getcFirms() {
+		if(population != null) // views of the columns
+			return population.getViews();
 		return cFirms;
 	}
 
@@ -110,6 +620,131 @@ public class IUModel extends AbstractSimulationManager implements EventListener
 		this.cFirms = cFirms;
 	}
 
+	// computes the aggregates of the firms from the next Inv pass on 
+	public FirmAggregates enableAggregates() {
+		if(aggregates == null)
+			aggregates = new FirmAggregates();
+		return aggregates;
+	}
+
+	// aggregates of the firms as of the last Inv pass, null unless enabled 
+	public FirmAggregates getAggregates() {
+		return aggregates;
+	}
+
+	// counts the branches of the decisions of the firms from the next Inv pass on 
+	public BranchCounters enableBranchCounters() {
+		if(counters == null)
+			counters = new BranchCounters();
+		return counters;
+	}
+
+	// branch counters as of the last Inv pass, null unless enabled 
+	public BranchCounters getBranchCounters() {
+		return counters;
+	}
+
+	public CFirmPopulation getPopulation() {
+		return population;
+	}
+
+	public Boolean getStructureOfArrays() {
+		return structureOfArrays;
+	}
+
+	public void setStructureOfArrays(Boolean structureOfArrays) {
+		this.structureOfArrays = structureOfArrays;
+	}
+
+	public Boolean getOffHeap() {
+		return offHeap;
+	}
+
+	public void setOffHeap(Boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	public String getOffHeapFile() {
+		return offHeapFile;
+	}
+
+	public void setOffHeapFile(String offHeapFile) {
+		this.offHeapFile = offHeapFile;
+	}
+
+	public AdjustmentSolver getAdjustmentSolver() {
+		return adjustmentSolver;
+	}
+
+	public void setAdjustmentSolver(AdjustmentSolver adjustmentSolver) {
+		this.adjustmentSolver = adjustmentSolver;
+	}
+
+	public DecisionTrace getTrace() {
+		return trace;
+	}
+
+	public Boolean getTraceDecisions() {
+		return traceDecisions;
+	}
+
+	public void setTraceDecisions(Boolean traceDecisions) {
+		this.traceDecisions = traceDecisions;
+	}
+
+	public Long getTraceFirmId() {
+		return traceFirmId;
+	}
+
+	public void setTraceFirmId(Long traceFirmId) {
+		this.traceFirmId = traceFirmId;
+	}
+
+	public Integer getTraceSampleEvery() {
+		return traceSampleEvery;
+	}
+
+	public void setTraceSampleEvery(Integer traceSampleEvery) {
+		this.traceSampleEvery = traceSampleEvery;
+	}
+
+	public Long getRunSeed() {
+		return runSeed;
+	}
+
+	public void setRunSeed(Long runSeed) {
+		this.runSeed = runSeed;
+	}
+
+	public CreditMarket getCreditMarket() {
+		return creditMarket;
+	}
+
+	public void setCreditMarket(CreditMarket creditMarket) {
+		this.creditMarket = creditMarket;
+	}
+
+	// bank of the credit market, null if creditMarket is None 
+	public Bank getBank() {
+		return bank;
+	}
+
+	public Boolean getFusedTick() {
+		return fusedTick;
+	}
+
+	public void setFusedTick(Boolean fusedTick) {
+		this.fusedTick = fusedTick;
+	}
+
+	public Integer getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(Integer parallelism) {
+		this.parallelism = parallelism;
+	}
+
 	public Double getpMarkUp() {
 		return pMarkUp;
 	}
@@ -0,0 +1,202 @@
+package inet.model;
+
+// Store of the c-firms outside of the Java heap (see CFirmPopulation): one fixed-stride record per firm, in direct
+// ByteBuffers, or in a file mapped into memory s.t. the population may be larger than the memory (the OS pages the
+// records in and out). The heap then only holds a few objects per range of firms, whatever the size of the population,
+// and the garbage collector never scans the state of the firms.
+// Record (RECORD bytes, native byte order): id (long), state of the random stream (long), then the columns of
+// FirmSnapshot.COLUMNS (doubles). The records are split into chunks of CHUNK records, a ByteBuffer being limited to
+// 2 GB. Records are only read and written through absolute gets and puts, s.t. ranges of firms can be run in parallel.
+// The direct memory is bounded by -XX:MaxDirectMemorySize (by default, the maximum heap size): larger populations
+// need either that option or a file. The file is scratch space, deleted when the JVM exits; it is not a checkpoint.
+// Nothing should ask for the views of the population (getViews(), one CFirm per row): IUCollector writes all its 
+// outputs from the rows when the firms are off the heap.
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+public class OffHeapFirmPopulation extends CFirmPopulation {
+
+	static final int ID = 0;
+	static final int RNG_STATE = 8;
+	static final int FIRST_COLUMN = 16; // offset of the column 0
+
+	public static final int RECORD = FIRST_COLUMN + 8 * FirmSnapshot.COLUMNS.length;
+
+	// offsets of the columns in the record
+	private static final int DINVE = FIRST_COLUMN + 8 * 0;
+	private static final int INVESTAR = FIRST_COLUMN + 8 * 1;
+	private static final int CINVE = FIRST_COLUMN + 8 * 2;
+	private static final int CD = FIRST_COLUMN + 8 * 3;
+	private static final int DQ = FIRST_COLUMN + 8 * 4;
+	private static final int QSTAR = FIRST_COLUMN + 8 * 5;
+	private static final int P = FIRST_COLUMN + 8 * 6;
+	private static final int C = FIRST_COLUMN + 8 * 7;
+	private static final int PDEM = FIRST_COLUMN + 8 * 8;
+	private static final int DEBT = FIRST_COLUMN + 8 * 9;
+	private static final int NW0 = FIRST_COLUMN + 8 * 10;
+	private static final int NW1 = FIRST_COLUMN + 8 * 11;
+	private static final int NWPRIME = FIRST_COLUMN + 8 * 12;
+	private static final int LBAR = FIRST_COLUMN + 8 * 13;
+	private static final int LPROD = FIRST_COLUMN + 8 * 14;
+	private static final int LDEBT = FIRST_COLUMN + 8 * 15;
+
+	static final int CHUNK_BITS = 23; // 2^23 records of 144 bytes per ByteBuffer, 1.2 GB
+	static final int CHUNK = 1 << CHUNK_BITS;
+
+	private final ByteBuffer[] chunks;
+	private final File file; // null for direct memory
+
+	private OffHeapFirmPopulation(IUModel model, int size, ByteBuffer[] chunks, File file) {
+		super(model, size);
+		this.chunks = chunks;
+		this.file = file;
+		initialize();
+	}
+
+	// ---------------------------------------------------------------------
+	// Constructors
+	// ---------------------------------------------------------------------
+
+	// records in direct memory
+	public static OffHeapFirmPopulation direct(IUModel model, int size) {
+		ByteBuffer[] chunks = new ByteBuffer[chunks(size)];
+		for(int k = 0; k < chunks.length; k++)
+			chunks[k] = ByteBuffer.allocateDirect(chunkBytes(size, k)).order(ByteOrder.nativeOrder());
+		return new OffHeapFirmPopulation(model, size, chunks, null);
+	}
+
+	// records in the file, created or overwritten
+	public static OffHeapFirmPopulation mapped(IUModel model, int size, File file) throws IOException {
+		ByteBuffer[] chunks = new ByteBuffer[chunks(size)];
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			raf.setLength(0); // all zero, as direct memory
+			raf.setLength((long) RECORD * size);
+			for(int k = 0; k < chunks.length; k++)
+				chunks[k] = channel.map(MapMode.READ_WRITE, (long) RECORD * k * CHUNK, chunkBytes(size, k)).order(ByteOrder.nativeOrder());
+		} finally {
+			raf.close(); // the mappings stay valid
+		}
+		file.deleteOnExit();
+		return new OffHeapFirmPopulation(model, size, chunks, file);
+	}
+
+	private static int chunks(int size) {
+		return Math.max(1, (int) (((long) size + CHUNK - 1) >>> CHUNK_BITS));
+	}
+
+	private static int chunkBytes(int size, int k) {
+		return RECORD * Math.min(CHUNK, size - k * CHUNK);
+	}
+
+	// ---------------------------------------------------------------------
+	// Rows
+	// ---------------------------------------------------------------------
+
+	private ByteBuffer chunk(int i) {
+		return chunks[i >>> CHUNK_BITS];
+	}
+
+	private static int offset(int i) {
+		return (i & (CHUNK - 1)) * RECORD;
+	}
+
+	long getId(int i) {
+		return chunk(i).getLong(offset(i) + ID);
+	}
+
+	void setId(int i, long id) {
+		chunk(i).putLong(offset(i) + ID, id);
+	}
+
+	long getRngState(int i) {
+		return chunk(i).getLong(offset(i) + RNG_STATE);
+	}
+
+	void setRngState(int i, long state) {
+		chunk(i).putLong(offset(i) + RNG_STATE, state);
+	}
+
+	double get(int i, int k) {
+		return chunk(i).getDouble(offset(i) + FIRST_COLUMN + 8 * k);
+	}
+
+	void set(int i, int k, double x) {
+		chunk(i).putDouble(offset(i) + FIRST_COLUMN + 8 * k, x);
+	}
+
+	void load(int i, CFirm f) {
+		ByteBuffer b = chunk(i);
+		int o = offset(i);
+		f.getKey().setId(b.getLong(o + ID));
+		f.rnd.state = b.getLong(o + RNG_STATE);
+		f.dInvE = b.getDouble(o + DINVE);
+		f.invEStar = b.getDouble(o + INVESTAR);
+		f.cInvE = b.getDouble(o + CINVE);
+		f.cD = b.getDouble(o + CD);
+		f.dQ = b.getDouble(o + DQ);
+		f.qStar = b.getDouble(o + QSTAR);
+		f.p = b.getDouble(o + P);
+		f.c = b.getDouble(o + C);
+		f.pDem = b.getDouble(o + PDEM);
+		f.debt = b.getDouble(o + DEBT);
+		f.nw[0] = b.getDouble(o + NW0);
+		f.nw[1] = b.getDouble(o + NW1);
+		f.nwPrime = b.getDouble(o + NWPRIME);
+		f.lBar = b.getDouble(o + LBAR);
+		f.lProd = b.getDouble(o + LPROD);
+		f.lDebt = b.getDouble(o + LDEBT);
+	}
+
+	void store(CFirm f, int i) {
+		ByteBuffer b = chunk(i);
+		int o = offset(i);
+		b.putLong(o + RNG_STATE, f.rnd.state);
+		b.putDouble(o + DINVE, f.dInvE);
+		b.putDouble(o + INVESTAR, f.invEStar);
+		b.putDouble(o + CINVE, f.cInvE);
+		b.putDouble(o + CD, f.cD);
+		b.putDouble(o + DQ, f.dQ);
+		b.putDouble(o + QSTAR, f.qStar);
+		b.putDouble(o + P, f.p);
+		b.putDouble(o + C, f.c);
+		b.putDouble(o + PDEM, f.pDem);
+		b.putDouble(o + DEBT, f.debt);
+		b.putDouble(o + NW0, f.nw[0]);
+		b.putDouble(o + NW1, f.nw[1]);
+		b.putDouble(o + NWPRIME, f.nwPrime);
+		b.putDouble(o + LBAR, f.lBar);
+		b.putDouble(o + LPROD, f.lProd);
+		b.putDouble(o + LDEBT, f.lDebt);
+	}
+
+	void storeShocks(CFirm f, int i) {
+		ByteBuffer b = chunk(i);
+		int o = offset(i);
+		b.putDouble(o + PDEM, f.pDem);
+		b.putDouble(o + DQ, f.dQ);
+		b.putDouble(o + NW0, f.nw[0]);
+		b.putDouble(o + DINVE, f.dInvE);
+		b.putDouble(o + DEBT, f.debt);
+		b.putDouble(o + LBAR, f.lBar);
+		b.putDouble(o + LDEBT, f.lDebt);
+		b.putDouble(o + LPROD, f.lProd);
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	// file holding the records, null if in direct memory
+	public File getFile() {
+		return file;
+	}
+
+}
@@ -0,0 +1,101 @@
+package inet.model;
+
+// Mergeable quantile sketch with a bounded relative error (log-bucketed histogram, as in DDSketch): a value x is
+// counted in the bucket ceil(log(|x|) / log(gamma)) of its sign, and a quantile is read back as the middle of its
+// bucket, within RELATIVE_ACCURACY of the exact one. Values closer to 0 than MIN_MAGNITUDE are counted as 0, and
+// magnitudes beyond MAX_MAGNITUDE fall in the last bucket. Merging adds the counts, s.t. the sketch of a tick does
+// not depend on how the firms were split.
+
+import java.util.Arrays;
+
+public final class QuantileSketch {
+
+	public static final double RELATIVE_ACCURACY = 0.01;
+	static final double MIN_MAGNITUDE = 1e-9;
+	static final double MAX_MAGNITUDE = 1e12;
+
+	private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+	private static final double LOG_GAMMA = Math.log(GAMMA);
+	private static final int MIN_INDEX = index(MIN_MAGNITUDE);
+	private static final int BUCKETS = index(MAX_MAGNITUDE) - MIN_INDEX + 1;
+
+	private final long[] positive = new long[BUCKETS];
+	private final long[] negative = new long[BUCKETS];
+	private long zero;
+	private long count;
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	public void add(double x) {
+		count++;
+		double magnitude = Math.abs(x);
+		if(magnitude < MIN_MAGNITUDE)
+			zero++;
+		else if(x > 0)
+			positive[bucket(magnitude)]++;
+		else
+			negative[bucket(magnitude)]++;
+	}
+
+	public void merge(QuantileSketch other) {
+		for(int b = 0; b < BUCKETS; b++) {
+			positive[b] += other.positive[b];
+			negative[b] += other.negative[b];
+		}
+		zero += other.zero;
+		count += other.count;
+	}
+
+	public void reset() {
+		Arrays.fill(positive, 0);
+		Arrays.fill(negative, 0);
+		zero = 0;
+		count = 0;
+	}
+
+	// value of rank q * (count - 1) in the sorted stream, q in [0, 1]
+	public double quantile(double q) {
+		if(count == 0)
+			return Double.NaN;
+		long rank = (long) Math.floor(q * (count - 1));
+		long seen = 0;
+		for(int b = BUCKETS - 1; b >= 0; b--) { // most negative first
+			seen += negative[b];
+			if(seen > rank)
+				return -value(b);
+		}
+		seen += zero;
+		if(seen > rank)
+			return 0.;
+		for(int b = 0; b < BUCKETS; b++) {
+			seen += positive[b];
+			if(seen > rank)
+				return value(b);
+		}
+		return value(BUCKETS - 1);
+	}
+
+	private static int index(double magnitude) {
+		return (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+	}
+
+	private static int bucket(double magnitude) {
+		return Math.min(BUCKETS - 1, index(magnitude) - MIN_INDEX);
+	}
+
+	// middle of the bucket (gamma^(i-1), gamma^i], in relative terms
+	private static double value(int bucket) {
+		return 2 * Math.pow(GAMMA, bucket + MIN_INDEX) / (GAMMA + 1);
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public long getCount() {
+		return count;
+	}
+
+}
@@ -0,0 +1,83 @@
+package inet.model;
+
+// Count, mean, variance, min and max of a stream of values, in one pass (Welford). Two RunningStats over disjoint
+// parts of a stream merge into the statistics of the whole stream (Chan et al.), s.t. ranges of firms can be
+// summarised independently and combined at the end of the tick.
+
+public final class RunningStats {
+
+	private long count;
+	private double mean;
+	private double m2; // sum of squared deviations from the mean
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	// ---------------------------------------------------------------------
+	// Own methods
+	// ---------------------------------------------------------------------
+
+	public void add(double x) {
+		count++;
+		double delta = x - mean;
+		mean += delta / count;
+		m2 += delta * (x - mean);
+		if(x < min)
+			min = x;
+		if(x > max)
+			max = x;
+	}
+
+	public void merge(RunningStats other) {
+		if(other.count == 0)
+			return;
+		if(count == 0) {
+			count = other.count;
+			mean = other.mean;
+			m2 = other.m2;
+			min = other.min;
+			max = other.max;
+			return;
+		}
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+		count = n;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public void reset() {
+		count = 0;
+		mean = 0.;
+		m2 = 0.;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods
+	// ---------------------------------------------------------------------
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return count > 0 ? mean : Double.NaN;
+	}
+
+	// sample variance
+	public double getVariance() {
+		return count > 1 ? m2 / (count - 1) : Double.NaN;
+	}
+
+	public double getMin() {
+		return count > 0 ? min : Double.NaN;
+	}
+
+	public double getMax() {
+		return count > 0 ? max : Double.NaN;
+	}
+
+}
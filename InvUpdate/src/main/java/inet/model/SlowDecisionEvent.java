@@ -0,0 +1,53 @@
+package inet.model;
+
+// JDK Flight Recorder event of a decision of a firm (CFirm.invUpdated()) slower than the threshold of the recording,
+// 100 us unless set otherwise (e.g. IUModel.slowDecisionMicros). Decisions are only timed if the model has
+// slowDecisionEvents on. Requires JFR, see FlightRecording.AVAILABLE.
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("inet.SlowDecision")
+@Label("Slow Decision")
+@Category("InvUpdate")
+@StackTrace(false)
+@Threshold("100 us")
+public class SlowDecisionEvent extends Event {
+
+	@Label("Firm Id")
+	long firmId;
+
+	@Label("Tick")
+	double tick;
+
+	@Label("Regime")
+	String regime;
+
+	@Label("Branches")
+	String branches; // of the decision, in their order in Branch
+
+	@Label("Adjustment Steps")
+	int adjustmentSteps;
+
+	// ends the event once the decision of the firm is over; filled from the firm and committed if above the threshold
+	void record(CFirm firm, double tick) {
+		end();
+		if(!shouldCommit())
+			return;
+		this.firmId = firm.getKey().getId();
+		this.tick = tick;
+		this.regime = String.valueOf(firm.regime);
+		StringBuilder path = new StringBuilder();
+		for(Branch branch : Branch.values())
+			if(firm.wentThrough(branch))
+				path.append(path.length() > 0 ? " " : "").append(branch);
+		this.branches = path.toString();
+		this.adjustmentSteps = firm.adjustmentSteps;
+		commit();
+	}
+
+}
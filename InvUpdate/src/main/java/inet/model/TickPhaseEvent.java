@@ -0,0 +1,40 @@
+package inet.model;
+
+// JDK Flight Recorder event of one phase of a tick: the model's Update, the Update and Inv passes over the firms and
+// the export of the collector (DumpInfo), with the number of firms it ran over. The observer does no work per tick
+// (no charts), so has no event.
+// Only recorded while a recording enables inet.TickPhase (e.g. -XX:StartFlightRecording, or IUModel.flightRecording);
+// begin() and commit() cost next to nothing otherwise. Requires JFR, see FlightRecording.AVAILABLE.
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("inet.TickPhase")
+@Label("Tick Phase")
+@Category("InvUpdate")
+@StackTrace(false)
+public class TickPhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Tick")
+	double tick;
+
+	@Label("Firms")
+	int firms;
+
+	// begins the event of the phase
+	public static TickPhaseEvent begin(String phase, double tick, int firms) {
+		TickPhaseEvent event = new TickPhaseEvent();
+		event.phase = phase;
+		event.tick = tick;
+		event.firms = firms;
+		event.begin();
+		return event;
+	}
+
+}
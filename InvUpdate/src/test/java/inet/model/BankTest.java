@@ -0,0 +1,62 @@
+package inet.model;
+
+// Clearing of the credit market over many ticks: once rationing starts, the demand of the rationed firms must stay at
+// the capacity of the bank, tick after tick, rather than alternate between rationing (demand above the capacity) and
+// no rationing (demand well below it). The state of the firms being drawn afresh every tick, the demand only meets the
+// capacity up to the sampling noise of the draws, about 1% with FIRMS firms, once the first ticks have brought the
+// share or the threshold to it (the demand is not linear in either).
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BankTest {
+
+	private static final long SEED = 20170101L;
+	private static final int FIRMS = 200000;
+	private static final int TICKS = 30;
+	private static final double LAMBDA = 0.3; // the demand is about 4.5 times the capacity without rationing
+	private static final double NOISE = 0.05;
+	private static final int SETTLING = 5; // ticks
+
+	@Test
+	public void proRataSettlesAtTheCapacity() {
+		assertSettles(CreditMarket.ProRata);
+	}
+
+	@Test
+	public void peckingOrderSettlesAtTheCapacity() {
+		assertSettles(CreditMarket.PeckingOrder);
+	}
+
+	private static void assertSettles(CreditMarket market) {
+		IUModel model = new IUModel();
+		model.setNumberOfAgents(FIRMS);
+		model.setEndTime((double) TICKS);
+		model.setRunSeed(SEED);
+		model.setCreditMarket(market);
+		model.setCalibrationOverride("lambda", LAMBDA);
+		model.buildObjects();
+		try {
+			model.step(0.);
+			Bank bank = model.getBank();
+			assertTrue(market + ": no rationing at the first tick", bank.getDemand() > 2 * bank.getCapacity());
+			for(int t = 1; t < TICKS; t++) {
+				model.step(t);
+				double ratio = bank.getDemand() / bank.getCapacity();
+				String tick = market + ", tick " + t + ": demand / capacity = " + ratio;
+				if(t >= SETTLING) {
+					assertTrue(tick, ratio <= 1 + NOISE);
+					assertTrue(tick, ratio >= 1 - NOISE);
+				}
+				if(market == CreditMarket.PeckingOrder)
+					assertTrue(tick + ", threshold dropped to 0", bank.getThreshold() > 0.);
+				else
+					assertTrue(tick + ", share back to 1", bank.getShare() < 1.);
+			}
+		} finally {
+			model.shutdownPool();
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package inet.model;
+
+// Differential test of the investment cut-back of the adjustments: the closed form (and the bracketed solver) must
+// give the same final allocation as the loop of resource_allocation.pdf. Same regime and number of machines, the other
+// outputs within CUT_TOLERANCE (see CFirm.applyCut()). Over firms drawn as in the model, for several calibrations, and
+// over fixture states going through each way a machine can be cut.
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import inet.data.Parameters;
+
+import org.junit.Test;
+
+public class CutInvestmentTest {
+
+	private static final long SEED = 20170101L;
+	private static final int FIRMS = 20000;
+	private static final int TICKS = 3;
+	private static final long CUT = 1L << Branch.Adj1Step.ordinal() | 1L << Branch.Adj2Step.ordinal()
+			| 1L << Branch.Adj2StepNw.ordinal(); // branches of a machine cut
+
+	// dQ, dInvE, nw[0], debt, lBar, and the step of the cut-back the loop goes through
+	private static final Object[][] FIXTURES = {
+		{2., 120., 5.5, 30., 1., Branch.Adj1Step}, // machines funded with nw, all cut
+		{2., 400., 12.5, 30., 2., Branch.Adj1Step}, // id., the cut-back succeeds
+		{2., 120., 1., 20., 4.5, Branch.Adj2Step}, // machines funded with loan, the last one partly with nw, all cut
+		{2., 120., 1., 8., 4.5, Branch.Adj2Step}, // id., the cut-back succeeds
+		{2., 200., 4., 25., 2.5, Branch.Adj2StepNw}, // machines funded with loan, then with nw, all cut
+		{2., 400., 6., 9., 2.5, Branch.Adj2StepNw}, // id., the cut-back succeeds
+	};
+
+	@Test
+	public void closedFormMatchesLoopOnDrawnFirms() {
+		for(double pMarkUp : new double[]{0.5, 1.2})
+			for(int dimK : new int[]{40, 4, 1})
+				for(double machinePrice : new double[]{1., 0.3}) {
+					Parameters parameters = Parameters.builder().setDimK(dimK).set("machinePrice", machinePrice).build();
+					for(AdjustmentSolver solver : new AdjustmentSolver[]{AdjustmentSolver.ClosedForm, AdjustmentSolver.Bracketed}) {
+						int cut = compareDrawn(parameters, pMarkUp, solver);
+						assertTrue("no cut-back for pMarkUp " + pMarkUp + ", dimK " + dimK, cut > 0);
+					}
+				}
+	}
+
+	@Test
+	public void closedFormMatchesLoopOnFixtures() {
+		Parameters parameters = Parameters.builder().build();
+		for(AdjustmentSolver solver : new AdjustmentSolver[]{AdjustmentSolver.ClosedForm, AdjustmentSolver.Bracketed}) {
+			CFirm loop = new CFirm(newModel(parameters, 0.5, AdjustmentSolver.Loop), 0);
+			CFirm other = new CFirm(newModel(parameters, 0.5, solver), 0);
+			for(int f = 0; f < FIXTURES.length; f++) {
+				set(loop, FIXTURES[f]);
+				set(other, FIXTURES[f]);
+				loop.decide();
+				other.decide();
+				Branch step = (Branch) FIXTURES[f][5];
+				assertTrue("fixture " + f + " does not go through " + step, (loop.path & 1L << step.ordinal()) != 0);
+				assertSameDecision(solver + ", fixture " + f, loop, other);
+			}
+		}
+	}
+
+	// decides the same draws with the loop and the solver; returns the number of decisions with a cut-back
+	private static int compareDrawn(Parameters parameters, double pMarkUp, AdjustmentSolver solver) {
+		IUModel loopModel = newModel(parameters, pMarkUp, AdjustmentSolver.Loop);
+		IUModel otherModel = newModel(parameters, pMarkUp, solver);
+		int cut = 0;
+		for(int i = 0; i < FIRMS; i++) {
+			CFirm loop = new CFirm(loopModel, i);
+			CFirm other = new CFirm(otherModel, i);
+			for(int t = 0; t < TICKS; t++) {
+				loop.update();
+				other.update();
+				loop.decide();
+				other.decide();
+				assertSameDecision(solver + ", pMarkUp " + pMarkUp + ", dimK " + parameters.getDimK() + ", machinePrice "
+						+ parameters.getMachinePrice() + ", firm " + i + ", tick " + t, loop, other);
+				if((loop.path & CUT) != 0)
+					cut++;
+			}
+		}
+		return cut;
+	}
+
+	private static IUModel newModel(Parameters parameters, double pMarkUp, AdjustmentSolver solver) {
+		IUModel model = new IUModel();
+		model.setParameters(parameters);
+		model.setpMarkUp(pMarkUp);
+		model.setRunSeed(SEED);
+		model.setAdjustmentSolver(solver);
+		return model;
+	}
+
+	private static void set(CFirm firm, Object[] fixture) {
+		firm.dQ = (Double) fixture[0];
+		firm.dInvE = (Double) fixture[1];
+		firm.nw[0] = (Double) fixture[2];
+		firm.debt = (Double) fixture[3];
+		firm.lBar = (Double) fixture[4];
+		firm.lDebt = 0.;
+		firm.lProd = 0.;
+	}
+
+	private static void assertSameDecision(String what, CFirm loop, CFirm other) {
+		assertEquals(what + ": regime", loop.regime, other.regime);
+		assertEquals(what + ": invEStar", loop.invEStar, other.invEStar, 0.);
+		assertEquals(what + ": dInvE", loop.dInvE, other.dInvE, 0.);
+		assertClose(what + ": dQ", loop.dQ, other.dQ);
+		assertClose(what + ": qStar", loop.qStar, other.qStar);
+		assertClose(what + ": cD", loop.cD, other.cD);
+		assertClose(what + ": nwPrime", loop.nwPrime, other.nwPrime);
+		assertClose(what + ": lProd", loop.lProd, other.lProd);
+		assertClose(what + ": lDebt", loop.lDebt, other.lDebt);
+	}
+
+	private static void assertClose(String what, double expected, double actual) {
+		assertTrue(what + ": " + expected + " vs " + actual, CFirm.withinCutTolerance(expected, actual));
+	}
+
+}
@@ -0,0 +1,185 @@
+package inet.model;
+
+// JMH benchmarks of the allocation decision of CFirm: invUpdated(), step1(), step2(), adjustment1(), adjustment2()
+// and payment(), on generated states of each branch regime (see DecisionFixtures), for several values of dimK, and
+// each AdjustmentSolver for the benchmarks that go through the adjustments. Throughput is in decisions per second.
+// Every invocation first copies the next state into the benchmarked firm; the cost of this copy alone is measured by
+// reset().
+// Run with: java -jar target/benchmarks.jar (add -prof gc for the allocation rate), or through main().
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecisionBenchmark {
+
+	// ---------------------------------------------------------------------
+	// States
+	// ---------------------------------------------------------------------
+
+	public static abstract class Fixture {
+
+		@Param({"1", "10", "40"})
+		public int dimK;
+
+		DecisionFixtures fixtures;
+		List<CFirm> afterStep1; // views, for payment()
+		CFirm firm;
+		private int next;
+
+		void setup(DecisionFixtures.Regime regime, int adjustment, AdjustmentSolver solver) {
+			fixtures = new DecisionFixtures(regime, dimK, adjustment);
+			fixtures.model.setAdjustmentSolver(solver);
+			afterStep1 = fixtures.afterStep1.getViews();
+			firm = fixtures.before.newCursor();
+		}
+
+		int nextRow() {
+			int row = next;
+			next = (row + 1) & (DecisionFixtures.SIZE - 1);
+			return row;
+		}
+	}
+
+	// states of the benchmarks that do not go through the adjustments: the solver is not a parameter
+	@State(Scope.Thread)
+	public static class Input extends Fixture {
+
+		@Param({"NoLoan", "PartialLoan", "FullRationing", "AdjustmentInvestment", "AdjustmentQuantity", "Bankruptcy"})
+		public DecisionFixtures.Regime regime;
+
+		@Setup
+		public void setup() {
+			setup(regime, 0, AdjustmentSolver.Loop);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Decision extends Fixture {
+
+		@Param({"NoLoan", "PartialLoan", "FullRationing", "AdjustmentInvestment", "AdjustmentQuantity", "Bankruptcy"})
+		public DecisionFixtures.Regime regime;
+
+		@Param({"Loop", "ClosedForm", "Bracketed"})
+		public AdjustmentSolver solver;
+
+		@Setup
+		public void setup() {
+			setup(regime, 0, solver);
+		}
+	}
+
+	// states going through adjustment1(), resp. adjustment2(), by outcome of the adjustment
+	@State(Scope.Thread)
+	public static class Adjustment1 extends Fixture {
+
+		@Param({"AdjustmentInvestment", "AdjustmentQuantity", "Bankruptcy"})
+		public DecisionFixtures.Regime outcome;
+
+		@Param({"Loop", "ClosedForm", "Bracketed"})
+		public AdjustmentSolver solver;
+
+		@Setup
+		public void setup() {
+			setup(outcome, 1, solver);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Adjustment2 extends Fixture {
+
+		@Param({"AdjustmentInvestment", "AdjustmentQuantity", "Bankruptcy"})
+		public DecisionFixtures.Regime outcome;
+
+		@Param({"Loop", "ClosedForm", "Bracketed"})
+		public AdjustmentSolver solver;
+
+		@Setup
+		public void setup() {
+			setup(outcome, 2, solver);
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// Benchmarks
+	// ---------------------------------------------------------------------
+
+	@Benchmark
+	public CFirm reset(Input s) {
+		s.fixtures.before.load(s.nextRow(), s.firm);
+		return s.firm;
+	}
+
+	@Benchmark
+	public double invUpdated(Decision s) {
+		s.fixtures.before.load(s.nextRow(), s.firm);
+		s.firm.invUpdated();
+		return s.firm.cD;
+	}
+
+	@Benchmark
+	public double step1(Input s) {
+		s.fixtures.before.load(s.nextRow(), s.firm);
+		s.firm.beginDecision();
+		s.firm.step1();
+		return s.firm.nwPrime;
+	}
+
+	@Benchmark
+	public double step2(Decision s) {
+		s.fixtures.afterStep1.load(s.nextRow(), s.firm);
+		s.firm.step2();
+		return s.firm.cD;
+	}
+
+	@Benchmark
+	public double payment(Input s) {
+		CFirm firm = s.afterStep1.get(s.nextRow());
+		return firm.payment(firm.qStar, firm.nwPrime, firm.lBar - firm.lProd, firm.lProd);
+	}
+
+	@Benchmark
+	public double adjustment1(Adjustment1 s) {
+		s.fixtures.afterStep1.load(s.nextRow(), s.firm);
+		s.firm.adjustment1();
+		return s.firm.cD;
+	}
+
+	@Benchmark
+	public double adjustment2(Adjustment2 s) {
+		s.fixtures.afterStep1.load(s.nextRow(), s.firm);
+		s.firm.adjustment2();
+		return s.firm.cD;
+	}
+
+	// runs all the benchmarks with the gc profiler
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(DecisionBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
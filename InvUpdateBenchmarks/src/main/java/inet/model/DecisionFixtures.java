@@ -0,0 +1,98 @@
+package inet.model;
+
+// States of a CFirm for the benchmarks of the allocation decision. Firms are drawn as in the model (CFirm.update(),
+// from a fixed seed) and kept if their decision goes through one of the branches of the regime, until SIZE states
+// are found. The branches are read from the path of the decision (CFirm.path, every branch taken, however long the
+// cut-back), s.t. long cut-backs (small dimK) are kept as often as short ones.
+
+import inet.data.Parameters;
+
+import java.util.EnumSet;
+
+public class DecisionFixtures {
+
+	public static final int SIZE = 1024; // power of two
+	private static final int MAX_DRAWS = 50000000;
+	private static final long SEED = 20170101L;
+
+	public enum Regime {
+		NoLoan(1.2, Branch.NoLoan),
+		PartialLoan(1.2, Branch.LoanForDebt, Branch.PartialLoanNoDebt, Branch.PartialLoanDebt),
+		FullRationing(1.2, Branch.FullLoanPaid),
+		AdjustmentInvestment(1.2, Branch.Adj1InvSucceeded, Branch.Adj2InvSucceeded),
+		AdjustmentQuantity(0.5, Branch.Adj1QhPositive, Branch.Adj2RightOfKink, Branch.Adj2QhPositive, Branch.Adj2NwQhPositive),
+		Bankruptcy(0.5, Branch.Adj1QhNegative, Branch.Adj2QhNegative, Branch.Adj2NwQhNegative);
+
+		final double pMarkUp; // the adjustments through qty only exist if p - c < c, i.e. pMarkUp < 1
+		final EnumSet<Branch> branches;
+
+		private Regime(double pMarkUp, Branch first, Branch... rest) {
+			this.pMarkUp = pMarkUp;
+			this.branches = EnumSet.of(first, rest);
+		}
+	}
+
+	final IUModel model;
+	final CFirmPopulation before; // as drawn by update(): input of invUpdated() and step1()
+	final CFirmPopulation afterStep1; // same states after step1(): input of step2() and of the adjustments
+
+	// adjustment = 1 or 2 keeps only the states going through adjustment1() or adjustment2(), 0 = any
+	public DecisionFixtures(Regime regime, int dimK, int adjustment) {
+		Parameters parameters = Parameters.builder().setDimK(dimK).build();
+
+		model = newModel(regime, parameters);
+
+		before = new HeapFirmPopulation(model, SIZE);
+		afterStep1 = new HeapFirmPopulation(model, SIZE);
+
+		CFirm probe = new CFirm(model, 0);
+		CFirm cursor = before.newCursor();
+		int found = 0;
+		for(int draw = 0; found < SIZE; draw++) {
+			if(draw == MAX_DRAWS)
+				throw new IllegalStateException("Only " + found + " states found for " + regime + ", dimK = " + dimK + ", adjustment " + adjustment);
+
+			probe.update();
+			before.store(probe, found); // overwritten by the next draw unless kept
+
+			probe.invUpdated();
+			if(!accepts(regime, adjustment, probe.path))
+				continue;
+
+			before.load(found, cursor);
+			cursor.beginDecision();
+			cursor.step1();
+			afterStep1.store(cursor, found);
+			found++;
+		}
+	}
+
+	private static IUModel newModel(Regime regime, Parameters parameters) {
+		IUModel model = new IUModel();
+		model.setParameters(parameters);
+		model.setpMarkUp(regime.pMarkUp);
+		model.setRunSeed(SEED);
+		return model;
+	}
+
+	private static boolean accepts(Regime regime, int adjustment, long path) {
+		boolean inRegime = false;
+		for(Branch branch : regime.branches)
+			inRegime |= taken(path, branch);
+		boolean adjustment1 = taken(path, Branch.LoanShort);
+		boolean adjustment2 = taken(path, Branch.FullLoanShort) || taken(path, Branch.PartialLoanShort);
+		switch(adjustment) {
+		case 1:
+			return inRegime && adjustment1;
+		case 2:
+			return inRegime && adjustment2;
+		default:
+			return inRegime;
+		}
+	}
+
+	private static boolean taken(long path, Branch branch) {
+		return (path & 1L << branch.ordinal()) != 0;
+	}
+
+}